@@ -0,0 +1,66 @@
+package it.denzosoft.javadecompilermodule.benchmark;
+
+import it.denzosoft.javadecompilermodule.decompiler.DecompilerEngine;
+import it.denzosoft.javadecompilermodule.decompiler.DecompilerRegistry;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decompiles the same class from several threads at once, as happens when
+ * tabs are restored or a batch runs. Every result is compared with the
+ * output of a single-threaded run, so a data race inside an engine fails
+ * the benchmark instead of going unnoticed.
+ * <p>
+ * Throughput should grow with the thread count; compare with a run using
+ * {@code -t 1}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class ConcurrentEngineBenchmark {
+
+    @Param({"cfr", "jd-core", "procyon", "vineflower"})
+    public String engineId;
+
+    @Param({"SMALL_POJO", "LAMBDA_HEAVY", "JDK_CLASS"})
+    public Corpus corpus;
+
+    private DecompilerEngine engine;
+    private byte[] bytecode;
+    private String expected;
+
+    @Setup
+    public void setUp() throws Exception {
+        engine = DecompilerRegistry.getEngine(engineId);
+        if (engine == null) {
+            throw new IllegalArgumentException("Unknown engine: " + engineId);
+        }
+        bytecode = corpus.bytecode();
+        expected = engine.decompile(corpus.internalName, bytecode, Corpus.CLASS_PROVIDER).format(true);
+    }
+
+    @Benchmark
+    public String decompile() throws Exception {
+        String source = engine.decompile(corpus.internalName, bytecode, Corpus.CLASS_PROVIDER).format(true);
+        if (!expected.equals(source)) {
+            throw new IllegalStateException(engineId + " produced different output for "
+                    + corpus.internalName + " under concurrent use");
+        }
+        return source;
+    }
+}
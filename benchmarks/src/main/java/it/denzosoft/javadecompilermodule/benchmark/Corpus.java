@@ -0,0 +1,63 @@
+package it.denzosoft.javadecompilermodule.benchmark;
+
+import it.denzosoft.javadecompilermodule.decompiler.DecompilerEngine;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Fixed set of classes to decompile, resolved from the benchmark classpath
+ * (including the running JDK).
+ */
+public enum Corpus {
+
+    /** Plain data class with accessors, equals and hashCode. */
+    SMALL_POJO("it/denzosoft/javadecompilermodule/benchmark/corpus/SmallPojo"),
+    /** Streams, lambdas and method references. */
+    LAMBDA_HEAVY("it/denzosoft/javadecompilermodule/benchmark/corpus/LambdaHeavy"),
+    /** Huge generated lookup tables from the JDK. */
+    HUGE_GENERATED("java/lang/CharacterData00"),
+    /** Large hand-written JDK class with generics and concurrency code. */
+    JDK_CLASS("java/util/concurrent/ConcurrentHashMap");
+
+    /**
+     * Loads classes as resources of the system class loader.
+     * Class resources are readable even from encapsulated JDK modules.
+     */
+    static final DecompilerEngine.ClassProvider CLASS_PROVIDER = new DecompilerEngine.ClassProvider() {
+        @Override
+        public boolean canLoad(String internalName) {
+            return ClassLoader.getSystemResource(internalName + ".class") != null;
+        }
+
+        @Override
+        public byte[] load(String internalName) throws Exception {
+            return Corpus.load(internalName);
+        }
+    };
+
+    final String internalName;
+
+    Corpus(String internalName) {
+        this.internalName = internalName;
+    }
+
+    byte[] bytecode() throws IOException {
+        return load(internalName);
+    }
+
+    private static byte[] load(String internalName) throws IOException {
+        try (InputStream is = ClassLoader.getSystemResourceAsStream(internalName + ".class")) {
+            if (is == null) {
+                throw new IOException("Not on classpath: " + internalName);
+            }
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int len;
+            while ((len = is.read(buffer)) != -1) {
+                baos.write(buffer, 0, len);
+            }
+            return baos.toByteArray();
+        }
+    }
+}
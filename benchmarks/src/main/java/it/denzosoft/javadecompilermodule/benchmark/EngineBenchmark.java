@@ -0,0 +1,56 @@
+package it.denzosoft.javadecompilermodule.benchmark;
+
+import it.denzosoft.javadecompilermodule.decompiler.DecompilerEngine;
+import it.denzosoft.javadecompilermodule.decompiler.DecompilerRegistry;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link DecompilerEngine#decompile} of each engine over the corpus.
+ * Sample-time mode reports the average together with p50/p99 latencies;
+ * {@link BenchmarkRunner} adds the GC profiler for allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class EngineBenchmark {
+
+    @Param({"cfr", "jd-core", "procyon", "vineflower", "outline"})
+    public String engineId;
+
+    @Param({"SMALL_POJO", "LAMBDA_HEAVY", "HUGE_GENERATED", "JDK_CLASS"})
+    public Corpus corpus;
+
+    @Param({"true", "false"})
+    public boolean preserveLineNumbers;
+
+    private DecompilerEngine engine;
+    private byte[] bytecode;
+
+    @Setup
+    public void setUp() throws Exception {
+        engine = DecompilerRegistry.getEngine(engineId);
+        if (engine == null) {
+            throw new IllegalArgumentException("Unknown engine: " + engineId);
+        }
+        bytecode = corpus.bytecode();
+    }
+
+    @Benchmark
+    public String decompile() throws Exception {
+        return engine.decompile(corpus.internalName, bytecode, Corpus.CLASS_PROVIDER).format(preserveLineNumbers);
+    }
+}
@@ -0,0 +1,59 @@
+package it.denzosoft.javadecompilermodule.benchmark.corpus;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Benchmark corpus: streams, lambdas, method references and captured variables.
+ */
+public class LambdaHeavy {
+
+    public Map<Boolean, List<String>> partition(List<SmallPojo> people, int minAge) {
+        return people.stream()
+                .filter(p -> p.getName() != null)
+                .collect(Collectors.partitioningBy(p -> p.getAge() >= minAge,
+                        Collectors.mapping(SmallPojo::getName, Collectors.toList())));
+    }
+
+    public Map<Integer, Long> histogram(List<SmallPojo> people) {
+        return people.stream()
+                .collect(Collectors.groupingBy(p -> p.getAge() / 10 * 10, Collectors.counting()));
+    }
+
+    public Optional<SmallPojo> oldestActive(List<SmallPojo> people) {
+        return people.stream()
+                .filter(SmallPojo::isActive)
+                .max(Comparator.comparingInt(SmallPojo::getAge).thenComparing(SmallPojo::getName));
+    }
+
+    public List<String> fizzBuzz(int n) {
+        return IntStream.rangeClosed(1, n)
+                .mapToObj(i -> i % 15 == 0 ? "FizzBuzz" : i % 3 == 0 ? "Fizz" : i % 5 == 0 ? "Buzz" : String.valueOf(i))
+                .collect(Collectors.toList());
+    }
+
+    public <T, R> Function<T, R> memoize(Function<T, R> function, Map<T, R> cache) {
+        return key -> cache.computeIfAbsent(key, function);
+    }
+
+    public Predicate<String> allOf(List<Predicate<String>> predicates) {
+        return predicates.stream().reduce(s -> true, Predicate::and);
+    }
+
+    public Supplier<Runnable> nested(StringBuilder log, int times) {
+        return () -> () -> IntStream.range(0, times).forEach(i -> log.append(i).append(','));
+    }
+
+    public BiFunction<Integer, Integer, Integer> curriedSum() {
+        Function<Integer, Function<Integer, Integer>> curried = a -> b -> a + b;
+        return (a, b) -> curried.apply(a).apply(b);
+    }
+}
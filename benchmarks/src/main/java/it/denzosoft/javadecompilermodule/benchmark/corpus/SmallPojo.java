@@ -0,0 +1,68 @@
+package it.denzosoft.javadecompilermodule.benchmark.corpus;
+
+import java.util.Objects;
+
+/**
+ * Benchmark corpus: a plain data class.
+ */
+public class SmallPojo {
+
+    private String name;
+    private int age;
+    private boolean active;
+
+    public SmallPojo() {
+    }
+
+    public SmallPojo(String name, int age, boolean active) {
+        this.name = name;
+        this.age = age;
+        this.active = active;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public int getAge() {
+        return age;
+    }
+
+    public void setAge(int age) {
+        this.age = age;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public void setActive(boolean active) {
+        this.active = active;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof SmallPojo)) {
+            return false;
+        }
+        SmallPojo other = (SmallPojo) obj;
+        return age == other.age && active == other.active && Objects.equals(name, other.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, age, active);
+    }
+
+    @Override
+    public String toString() {
+        return "SmallPojo[name=" + name + ", age=" + age + ", active=" + active + "]";
+    }
+}
@@ -1,7 +1,13 @@
 package it.denzosoft.javadecompilermodule;
 
+import it.denzosoft.javadecompilermodule.cache.MemorySourceCache;
 import java.io.IOException;
+import org.openide.filesystems.FileChangeAdapter;
+import org.openide.filesystems.FileChangeListener;
+import org.openide.filesystems.FileEvent;
 import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileRenameEvent;
+import org.openide.filesystems.FileUtil;
 import org.openide.loaders.DataObjectExistsException;
 import org.openide.loaders.MultiDataObject;
 import org.openide.loaders.MultiFileLoader;
@@ -17,13 +23,30 @@ import org.openide.util.Lookup;
 public class ClassFileDataObject extends MultiDataObject {
 
     private final DecompiledEditorSupport editorSupport;
+    private final FileChangeListener cacheInvalidator = new FileChangeAdapter() {
+        @Override
+        public void fileChanged(FileEvent fe) {
+            MemorySourceCache.getDefault().invalidate(fe.getFile());
+        }
+
+        @Override
+        public void fileDeleted(FileEvent fe) {
+            MemorySourceCache.getDefault().invalidate(fe.getFile());
+        }
+
+        @Override
+        public void fileRenamed(FileRenameEvent fe) {
+            MemorySourceCache.getDefault().invalidate(fe.getFile());
+        }
+    };
 
     public ClassFileDataObject(FileObject pf, MultiFileLoader loader) throws DataObjectExistsException, IOException {
         super(pf, loader);
-        System.out.println("[JavaDecompiler] ClassFileDataObject created for: " + pf.getPath());
         editorSupport = new DecompiledEditorSupport(this);
         CookieSet cookies = getCookieSet();
         cookies.add(editorSupport);
+        // Forget cached sources as soon as the class file changes
+        pf.addFileChangeListener(FileUtil.weakFileChangeListener(cacheInvalidator, pf));
     }
 
     @Override
@@ -0,0 +1,123 @@
+package it.denzosoft.javadecompilermodule;
+
+import it.denzosoft.javadecompilermodule.decompiler.ArchiveClassProvider;
+import it.denzosoft.javadecompilermodule.decompiler.DecompilerEngine;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.netbeans.api.java.classpath.ClassPath;
+import org.openide.filesystems.FileObject;
+
+/**
+ * Class provider for class files on disk. Resolves dependencies across the
+ * owning project's execution, compile and boot classpaths through a
+ * {@link ClassPathIndex}; the class root of the file itself always comes first.
+ */
+final class ClassPathClassProvider implements DecompilerEngine.ClassProvider, Closeable {
+
+    private static final String[] CLASSPATH_TYPES = {ClassPath.EXECUTE, ClassPath.COMPILE, ClassPath.BOOT};
+
+    private final String internalName;
+    private final byte[] bytecode;
+    private final ClassPathIndex index;
+    private final String scopeId;
+    private final Map<File, ArchiveClassProvider> archives = new HashMap<>();
+    private boolean closed;
+
+    private ClassPathClassProvider(String internalName, byte[] bytecode, ClassPathIndex index) {
+        this.internalName = internalName;
+        this.bytecode = bytecode;
+        this.index = index;
+        this.scopeId = "classpath:" + index.getScopeId();
+    }
+
+    /**
+     * Creates the provider for decompiling a class file.
+     *
+     * @param classFile the class file being decompiled
+     * @param internalName its internal name
+     * @param bytecode its bytes, served without touching the file again
+     */
+    static ClassPathClassProvider create(FileObject classFile, String internalName, byte[] bytecode) {
+        List<FileObject> roots = new ArrayList<>();
+        FileObject ownRoot = classRoot(classFile, internalName);
+        if (ownRoot != null) {
+            roots.add(ownRoot);
+        }
+        for (String type : CLASSPATH_TYPES) {
+            ClassPath classPath = ClassPath.getClassPath(classFile, type);
+            if (classPath == null) {
+                continue;
+            }
+            for (FileObject root : classPath.getRoots()) {
+                if (!roots.contains(root)) {
+                    roots.add(root);
+                }
+            }
+        }
+        return new ClassPathClassProvider(internalName, bytecode, ClassPathIndex.forRoots(roots));
+    }
+
+    /**
+     * Returns the folder the package structure of the class starts in,
+     * i.e. the class file's ancestor one level per package segment up.
+     */
+    private static FileObject classRoot(FileObject classFile, String internalName) {
+        FileObject root = classFile.getParent();
+        for (int i = internalName.indexOf('/'); i >= 0 && root != null; i = internalName.indexOf('/', i + 1)) {
+            root = root.getParent();
+        }
+        return root;
+    }
+
+    @Override
+    public boolean canLoad(String name) {
+        return name.equals(internalName) || index.find(name) != null;
+    }
+
+    @Override
+    public byte[] load(String name) throws Exception {
+        if (name.equals(internalName)) {
+            return bytecode;
+        }
+        ClassPathIndex.RootIndex root = index.find(name);
+        if (root == null) {
+            throw new IOException("Cannot load: " + name);
+        }
+        File archive = root.getArchive();
+        if (archive == null) {
+            return root.load(name);
+        }
+        return archive(archive).load(name);
+    }
+
+    @Override
+    public String getScopeId() {
+        return scopeId;
+    }
+
+    private synchronized ArchiveClassProvider archive(File file) throws IOException {
+        if (closed) {
+            throw new IOException("Provider closed");
+        }
+        ArchiveClassProvider provider = archives.get(file);
+        if (provider == null) {
+            provider = new ArchiveClassProvider(file);
+            archives.put(file, provider);
+        }
+        return provider;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (ArchiveClassProvider provider : archives.values()) {
+            provider.close();
+        }
+        archives.clear();
+    }
+}
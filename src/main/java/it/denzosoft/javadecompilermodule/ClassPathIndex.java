@@ -0,0 +1,338 @@
+package it.denzosoft.javadecompilermodule;
+
+import it.denzosoft.javadecompilermodule.decompiler.ArchiveIndex;
+import it.denzosoft.javadecompilermodule.decompiler.ArchiveIndexService;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openide.filesystems.FileChangeAdapter;
+import org.openide.filesystems.FileChangeListener;
+import org.openide.filesystems.FileEvent;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileRenameEvent;
+import org.openide.filesystems.FileUtil;
+
+/**
+ * Maps internal class names to the classpath root defining them, so engines
+ * resolve dependencies with one hash probe instead of walking folders.
+ * <p>
+ * Each root is listed once and shared by every classpath containing it; a
+ * root stops listening and is forgotten once no cached classpath uses it.
+ * Local folders are kept current through file events and archives are
+ * re-listed when the archive file changes. Every root counts its own
+ * changes, so only the merged maps of classpaths containing a changed root
+ * are rebuilt, lazily on their next lookup.
+ */
+final class ClassPathIndex {
+
+    private static final Logger LOG = Logger.getLogger(ClassPathIndex.class.getName());
+
+    private static final String CLASS_EXT = "class";
+    private static final int MAX_CLASSPATHS = 8;
+
+    // Numbers the indexes, guarded by CLASSPATHS
+    private static long instances;
+
+    // Roots of the cached classpaths, guarded by CLASSPATHS
+    private static final Map<String, RootIndex> ROOTS = new HashMap<>();
+    private static final Map<List<String>, ClassPathIndex> CLASSPATHS = new LinkedHashMap<List<String>, ClassPathIndex>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<String>, ClassPathIndex> eldest) {
+            if (size() <= MAX_CLASSPATHS) {
+                return false;
+            }
+            // Providers still using the evicted index keep working on its last listing
+            for (RootIndex root : eldest.getValue().roots) {
+                if (--root.users == 0) {
+                    ROOTS.remove(root.key);
+                    root.release();
+                }
+            }
+            return true;
+        }
+    };
+
+    private final List<RootIndex> roots;
+    private final String rootsKey;
+    private final long instance;
+    private Map<String, RootIndex> merged;
+    // Generation of each root when the merged map was built
+    private long[] mergedGenerations;
+
+    private ClassPathIndex(List<RootIndex> roots, List<String> rootUrls, long instance) {
+        this.roots = roots;
+        this.rootsKey = String.join("\n", rootUrls);
+        this.instance = instance;
+    }
+
+    /**
+     * Returns the index over the given roots, searched in order.
+     */
+    static ClassPathIndex forRoots(List<FileObject> roots) {
+        List<String> key = new ArrayList<>(roots.size());
+        for (FileObject root : roots) {
+            key.add(root.toURL().toExternalForm());
+        }
+        synchronized (CLASSPATHS) {
+            ClassPathIndex index = CLASSPATHS.get(key);
+            if (index == null) {
+                List<RootIndex> rootIndexes = new ArrayList<>(roots.size());
+                for (int i = 0; i < roots.size(); i++) {
+                    final FileObject root = roots.get(i);
+                    RootIndex rootIndex = ROOTS.computeIfAbsent(key.get(i), k -> new RootIndex(k, root));
+                    rootIndex.users++;
+                    rootIndexes.add(rootIndex);
+                }
+                index = new ClassPathIndex(rootIndexes, key, ++instances);
+                CLASSPATHS.put(key, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Returns the root defining the class, or null if no root does.
+     */
+    RootIndex find(String internalName) {
+        return mergedMap().get(internalName);
+    }
+
+    /**
+     * Returns an id of the roots and their current contents; it changes as
+     * soon as any indexed root changes.
+     */
+    String getScopeId() {
+        // Root generations only grow, so their sum changes with every change of any root.
+        // A released root stops counting and starts over if listed again, so an evicted
+        // classpath never shares its ids with the index that replaces it.
+        long generation = 0;
+        for (RootIndex root : roots) {
+            generation += root.generation.get();
+        }
+        return rootsKey + '#' + instance + '.' + generation;
+    }
+
+    private synchronized Map<String, RootIndex> mergedMap() {
+        long[] generations = new long[roots.size()];
+        for (int i = 0; i < generations.length; i++) {
+            generations[i] = roots.get(i).generation.get();
+        }
+        if (merged == null || !Arrays.equals(mergedGenerations, generations)) {
+            Map<String, RootIndex> map = new HashMap<>();
+            for (RootIndex root : roots) {
+                for (String name : root.names()) {
+                    // Earlier roots shadow later ones, as on the real classpath
+                    map.putIfAbsent(name, root);
+                }
+            }
+            merged = map;
+            // Read before listing: a change during the listing triggers another rebuild
+            mergedGenerations = generations;
+        }
+        return merged;
+    }
+
+    /**
+     * The classes below one classpath root.
+     */
+    static final class RootIndex {
+
+        private final String key;
+        private final FileObject root;
+        private final File archive;
+        private final File folder;
+        // Bumped whenever the classes below the root change
+        private final AtomicLong generation = new AtomicLong();
+        private volatile Set<String> names;
+        // Cached classpaths containing the root, guarded by CLASSPATHS
+        private int users;
+        private FileChangeListener listener;
+        private boolean released;
+
+        RootIndex(String key, FileObject root) {
+            this.key = key;
+            this.root = root;
+            FileObject archiveFile = FileUtil.getArchiveFile(root);
+            this.archive = archiveFile != null ? FileUtil.toFile(archiveFile) : null;
+            this.folder = archiveFile == null ? FileUtil.toFile(root) : null;
+        }
+
+        /**
+         * Returns the archive file of an archive root, or null for folders.
+         */
+        File getArchive() {
+            return archive;
+        }
+
+        /**
+         * Reads a class from a root that is not a local archive.
+         */
+        byte[] load(String internalName) throws IOException {
+            FileObject fo = root.getFileObject(internalName + '.' + CLASS_EXT);
+            if (fo == null) {
+                throw new IOException("Cannot load: " + internalName);
+            }
+            return fo.asBytes();
+        }
+
+        private Set<String> names() {
+            Set<String> result = names;
+            if (result == null) {
+                synchronized (this) {
+                    result = names;
+                    if (result == null) {
+                        startListening();
+                        result = list();
+                        names = result;
+                    }
+                }
+            }
+            return result;
+        }
+
+        private Set<String> list() {
+            Set<String> result = ConcurrentHashMap.newKeySet();
+            if (archive != null) {
+                // The shared archive index already knows the entries, no need to walk the JAR filesystem
+                try {
+                    ArchiveIndex index = ArchiveIndexService.getDefault().acquire(archive);
+                    try {
+                        result.addAll(index.getClassNames());
+                    } finally {
+                        index.release();
+                    }
+                } catch (IOException e) {
+                    LOG.log(Level.INFO, "Cannot index " + archive, e);
+                }
+                return result;
+            }
+            Enumeration<? extends FileObject> children = root.getChildren(true);
+            while (children.hasMoreElements()) {
+                FileObject fo = children.nextElement();
+                if (fo.isData() && CLASS_EXT.equals(fo.getExt())) {
+                    String name = className(fo);
+                    if (name != null) {
+                        result.add(name);
+                    }
+                }
+            }
+            return result;
+        }
+
+        private String className(FileObject fo) {
+            String path = FileUtil.getRelativePath(root, fo);
+            return path != null && path.endsWith('.' + CLASS_EXT)
+                    ? path.substring(0, path.length() - CLASS_EXT.length() - 1) : null;
+        }
+
+        // Called with the monitor held
+        private void startListening() {
+            if (listener != null || released) {
+                return;
+            }
+            if (folder != null) {
+                listener = new FolderListener();
+                FileUtil.addRecursiveListener(listener, folder);
+            } else if (archive != null) {
+                listener = new FileChangeAdapter() {
+                    @Override
+                    public void fileChanged(FileEvent fe) {
+                        invalidate();
+                    }
+
+                    @Override
+                    public void fileDeleted(FileEvent fe) {
+                        invalidate();
+                    }
+                };
+                FileUtil.addFileChangeListener(listener, archive);
+            }
+            // Other roots (e.g. the JDK runtime image) do not change while the IDE runs
+        }
+
+        /**
+         * Stops following changes once no cached classpath uses the root.
+         */
+        private synchronized void release() {
+            released = true;
+            if (listener == null) {
+                return;
+            }
+            if (folder != null) {
+                FileUtil.removeRecursiveListener(listener, folder);
+            } else {
+                FileUtil.removeFileChangeListener(listener, archive);
+            }
+            listener = null;
+        }
+
+        private void invalidate() {
+            names = null;
+            generation.incrementAndGet();
+        }
+
+        /**
+         * Keeps the names of a local folder current as the build writes class files.
+         */
+        private final class FolderListener extends FileChangeAdapter {
+
+            @Override
+            public void fileDataCreated(FileEvent fe) {
+                Set<String> current = names;
+                String name = className(fe.getFile());
+                if (current != null && name != null && current.add(name)) {
+                    generation.incrementAndGet();
+                }
+            }
+
+            @Override
+            public void fileChanged(FileEvent fe) {
+                // A recompile rewrites class files in place: the names stay, but state
+                // resolved from the old bytes (see getScopeId) must not be reused
+                if (className(fe.getFile()) != null) {
+                    generation.incrementAndGet();
+                }
+            }
+
+            @Override
+            public void fileDeleted(FileEvent fe) {
+                Set<String> current = names;
+                if (current == null) {
+                    return;
+                }
+                FileObject fo = fe.getFile();
+                if (fo.isFolder()) {
+                    invalidate();
+                    return;
+                }
+                String name = className(fo);
+                if (name != null && current.remove(name)) {
+                    generation.incrementAndGet();
+                }
+            }
+
+            @Override
+            public void fileFolderCreated(FileEvent fe) {
+                invalidate();
+            }
+
+            @Override
+            public void fileRenamed(FileRenameEvent fe) {
+                invalidate();
+            }
+        }
+    }
+}
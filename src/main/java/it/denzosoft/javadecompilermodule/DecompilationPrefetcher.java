@@ -0,0 +1,161 @@
+package it.denzosoft.javadecompilermodule;
+
+import it.denzosoft.javadecompilermodule.decompiler.ClassFileScanner;
+import it.denzosoft.javadecompilermodule.decompiler.DecompilerRegistry;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileUtil;
+import org.openide.util.RequestProcessor;
+
+/**
+ * Speculatively decompiles the classes a user is likely to open next:
+ * the supertypes and types referenced from the opened class, then the other
+ * classes of its package. Results land in the source caches.
+ * <p>
+ * Work runs on a single low-priority thread, backs off while the system is
+ * busy and is cancelled as soon as a foreground decompilation starts.
+ */
+final class DecompilationPrefetcher {
+
+    private static final Logger LOG = Logger.getLogger(DecompilationPrefetcher.class.getName());
+
+    private static final int MAX_CANDIDATES = 24;
+    // Back off while the load average exceeds this fraction of the cores
+    private static final double MAX_LOAD_PER_CPU = 0.75;
+    private static final int BUSY_WAIT_MS = 500;
+    private static final int MAX_BUSY_WAITS = 20;
+
+    private static final RequestProcessor RP = new RequestProcessor("JavaDecompiler prefetch", 1, true);
+    private static final AtomicInteger FOREGROUND = new AtomicInteger();
+    private static RequestProcessor.Task current;
+
+    private DecompilationPrefetcher() {
+    }
+
+    /**
+     * Marks the start of a user-triggered decompilation and aborts any prefetch in progress.
+     */
+    static void foregroundStarted() {
+        FOREGROUND.incrementAndGet();
+        synchronized (DecompilationPrefetcher.class) {
+            if (current != null) {
+                current.cancel();
+                current = null;
+            }
+        }
+    }
+
+    /**
+     * Marks the end of a user-triggered decompilation.
+     */
+    static void foregroundFinished() {
+        FOREGROUND.decrementAndGet();
+    }
+
+    /**
+     * Schedules prefetching around a class that was just opened from an archive.
+     *
+     * @param classInfo the scanned class, or null if it could not be read
+     */
+    static void schedule(final FileObject classFile, final ClassFileScanner classInfo) {
+        if (classInfo == null || !DecompilerRegistry.isPrefetchEnabled() || FileUtil.getArchiveFile(classFile) == null) {
+            return;
+        }
+        synchronized (DecompilationPrefetcher.class) {
+            if (current != null) {
+                current.cancel();
+            }
+            current = RP.post(() -> prefetch(classFile, classInfo), 0, Thread.MIN_PRIORITY);
+        }
+    }
+
+    private static void prefetch(FileObject classFile, ClassFileScanner classInfo) {
+        List<FileObject> candidates = findCandidates(classFile, classInfo);
+        for (FileObject candidate : candidates) {
+            if (!mayRun()) {
+                return;
+            }
+            try {
+                Decompiler.warmUp(candidate);
+            } catch (Exception e) {
+                LOG.log(Level.FINE, "Prefetch failed for " + candidate.getPath(), e);
+            }
+        }
+    }
+
+    /**
+     * Returns true if prefetching may continue, waiting while the system is busy.
+     */
+    private static boolean mayRun() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        for (int wait = 0; ; wait++) {
+            if (Thread.currentThread().isInterrupted() || FOREGROUND.get() > 0) {
+                return false;
+            }
+            double load = os.getSystemLoadAverage();
+            if (load < 0 || load < os.getAvailableProcessors() * MAX_LOAD_PER_CPU) {
+                return true;
+            }
+            if (wait == MAX_BUSY_WAITS) {
+                return false;
+            }
+            try {
+                Thread.sleep(BUSY_WAIT_MS);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Supertypes first, then other referenced types, then package siblings.
+     * Only classes from the same archive are considered.
+     */
+    private static List<FileObject> findCandidates(FileObject classFile, ClassFileScanner classInfo) {
+        FileObject archive = FileUtil.getArchiveFile(classFile);
+        FileObject root = archive != null ? FileUtil.getArchiveRoot(archive) : null;
+        List<FileObject> result = new ArrayList<>();
+        if (root == null) {
+            return result;
+        }
+
+        Set<String> names = new LinkedHashSet<>();
+        if (classInfo.getSuperClass() != null) {
+            names.add(classInfo.getSuperClass());
+        }
+        names.addAll(classInfo.getInterfaces());
+        names.addAll(classInfo.getReferencedClasses());
+        for (String name : names) {
+            if (result.size() == MAX_CANDIDATES) {
+                return result;
+            }
+            FileObject candidate = root.getFileObject(name + ".class");
+            if (candidate != null && !candidate.equals(classFile)) {
+                result.add(candidate);
+            }
+        }
+
+        FileObject folder = classFile.getParent();
+        if (folder != null) {
+            for (FileObject sibling : folder.getChildren()) {
+                if (result.size() == MAX_CANDIDATES) {
+                    break;
+                }
+                // Nested classes are decompiled along with their outer class
+                if ("class".equals(sibling.getExt()) && sibling.getName().indexOf('$') < 0
+                        && !sibling.equals(classFile) && !result.contains(sibling)) {
+                    result.add(sibling);
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,99 @@
+package it.denzosoft.javadecompilermodule;
+
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Timings of one decompilation, written as a single FINE record once the
+ * source is shown (or stored, for prefetching): the class, the engine, how
+ * the source was obtained and the time spent in each phase.
+ * <p>
+ * Silent by default; enable it with
+ * {@code -J-Dit.denzosoft.javadecompilermodule.DecompilationTrace.level=FINE}.
+ */
+final class DecompilationTrace {
+
+    private static final Logger LOG = Logger.getLogger(DecompilationTrace.class.getName());
+
+    enum Phase {
+        /** Reading and scanning the class file(s). */
+        READ("read"),
+        /** Preloading the classes the engine will ask for. */
+        DEPENDENCIES("deps"),
+        /** Running the engine(s). */
+        ENGINE("engine"),
+        /** Aligning the output to the original line numbers. */
+        ALIGN("align"),
+        /** Loading the source into the editor document. */
+        DOCUMENT("document");
+
+        final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+    }
+
+    private final boolean foreground;
+    private final long started = System.nanoTime();
+    private final long[] nanos = new long[Phase.values().length];
+    private String className;
+    private String engine;
+    private String result = "failed";
+
+    DecompilationTrace(boolean foreground) {
+        this.foreground = foreground;
+    }
+
+    void setClassName(String className) {
+        this.className = className;
+    }
+
+    void setEngine(String engineId) {
+        this.engine = engineId;
+    }
+
+    /**
+     * Sets how the source was obtained, e.g. "cached", "decompiled", "fallback".
+     */
+    void setResult(String result) {
+        this.result = result;
+    }
+
+    /**
+     * Adds the time since {@code startNanos} (a {@link System#nanoTime()} value) to a phase.
+     */
+    void end(Phase phase, long startNanos) {
+        add(phase, System.nanoTime() - startNanos);
+    }
+
+    synchronized void add(Phase phase, long elapsedNanos) {
+        nanos[phase.ordinal()] += elapsedNanos;
+    }
+
+    /**
+     * Writes the record, if enabled.
+     */
+    synchronized void log() {
+        if (!LOG.isLoggable(Level.FINE)) {
+            return;
+        }
+        StringBuilder record = new StringBuilder(160);
+        record.append(foreground ? "editor " : "prefetch ").append(className)
+                .append(" result=").append(result);
+        if (engine != null) {
+            record.append(" engine=").append(engine);
+        }
+        for (Phase phase : Phase.values()) {
+            appendMillis(record, phase.label, nanos[phase.ordinal()]);
+        }
+        appendMillis(record, "total", System.nanoTime() - started);
+        LOG.fine(record.toString());
+    }
+
+    private static void appendMillis(StringBuilder record, String label, long elapsedNanos) {
+        record.append(' ').append(label).append('=')
+                .append(String.format(Locale.ROOT, "%.1f", elapsedNanos / 1_000_000.0)).append("ms");
+    }
+}
@@ -0,0 +1,160 @@
+package it.denzosoft.javadecompilermodule;
+
+import it.denzosoft.javadecompilermodule.decompiler.ArchiveClassProvider;
+import it.denzosoft.javadecompilermodule.decompiler.BatchDecompiler;
+import it.denzosoft.javadecompilermodule.decompiler.DecompilerEngine;
+import it.denzosoft.javadecompilermodule.decompiler.DecompilerRegistry;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipOutputStream;
+import javax.swing.JFileChooser;
+import org.netbeans.api.progress.ProgressHandle;
+import org.openide.DialogDisplayer;
+import org.openide.NotifyDescriptor;
+import org.openide.awt.StatusDisplayer;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileUtil;
+import org.openide.util.NbBundle;
+import org.openide.util.RequestProcessor;
+import org.openide.windows.WindowManager;
+
+/**
+ * Decompiles every top-level class of a JAR into a "-sources.jar" or a directory.
+ * Classes are decompiled in parallel on all cores with the selected engine.
+ * Registered on JAR nodes in layer.xml.
+ */
+public final class DecompileArchiveAction implements ActionListener {
+
+    private static final RequestProcessor RP = new RequestProcessor("JavaDecompiler archive decompilation", 1, true);
+    private static final int MAX_REPORTED_FAILURES = 10;
+
+    private final List<FileObject> context;
+
+    public DecompileArchiveAction(List<FileObject> context) {
+        this.context = context;
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent ev) {
+        for (FileObject fo : context) {
+            final File archive = FileUtil.toFile(fo);
+            if (archive == null || !FileUtil.isArchiveFile(fo)) {
+                continue;
+            }
+            final File target = chooseTarget(archive);
+            if (target != null) {
+                RP.post(() -> decompileArchive(archive, target));
+            }
+        }
+    }
+
+    /**
+     * Asks where to write the sources. A ".jar"/".zip" name produces an archive,
+     * anything else is treated as a directory.
+     */
+    private static File chooseTarget(File archive) {
+        String baseName = archive.getName();
+        int dot = baseName.lastIndexOf('.');
+        if (dot > 0) {
+            baseName = baseName.substring(0, dot);
+        }
+        JFileChooser chooser = new JFileChooser(archive.getParentFile());
+        chooser.setDialogTitle(NbBundle.getMessage(DecompileArchiveAction.class, "TITLE_DecompileArchiveTarget"));
+        chooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+        chooser.setSelectedFile(new File(archive.getParentFile(), baseName + "-sources.jar"));
+        if (chooser.showSaveDialog(WindowManager.getDefault().getMainWindow()) != JFileChooser.APPROVE_OPTION) {
+            return null;
+        }
+        File target = chooser.getSelectedFile();
+        if (target.isFile()) {
+            NotifyDescriptor confirm = new NotifyDescriptor.Confirmation(
+                    NbBundle.getMessage(DecompileArchiveAction.class, "MSG_OverwriteTarget", target.getName()),
+                    NotifyDescriptor.OK_CANCEL_OPTION);
+            if (DialogDisplayer.getDefault().notify(confirm) != NotifyDescriptor.OK_OPTION) {
+                return null;
+            }
+        }
+        return target;
+    }
+
+    private static boolean isArchiveTarget(File target) {
+        String name = target.getName().toLowerCase(Locale.ROOT);
+        return !target.isDirectory() && (name.endsWith(".jar") || name.endsWith(".zip"));
+    }
+
+    private static void decompileArchive(File archive, File target) {
+        DecompilerEngine engine = DecompilerRegistry.getSelectedEngine();
+        boolean preserveLineNumbers = DecompilerRegistry.isPreserveLineNumbers();
+        int parallelism = Runtime.getRuntime().availableProcessors();
+
+        try (ArchiveClassProvider classProvider = new ArchiveClassProvider(archive)) {
+            List<String> classes = BatchDecompiler.topLevelClasses(classProvider.getIndex().getClassNames());
+            final BatchDecompiler batch = new BatchDecompiler(engine, classProvider, preserveLineNumbers, parallelism);
+            batch.setTimeoutMillis(DecompilerRegistry.getTimeoutSeconds(engine.getId()) * 1000L);
+            final ProgressHandle handle = ProgressHandle.createHandle(
+                    NbBundle.getMessage(DecompileArchiveAction.class, "MSG_DecompilingArchive", archive.getName(), engine.getDisplayName()),
+                    () -> {
+                        batch.cancel();
+                        return true;
+                    });
+            final AtomicInteger done = new AtomicInteger();
+            BatchDecompiler.Listener listener = (internalName, nanos, failure) ->
+                    handle.progress(internalName, done.incrementAndGet());
+
+            handle.start(classes.size());
+            BatchDecompiler.Result result;
+            try {
+                if (isArchiveTarget(target)) {
+                    try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(target)))) {
+                        result = batch.run(classes, BatchDecompiler.zipSink(out), listener);
+                    }
+                } else {
+                    result = batch.run(classes, BatchDecompiler.directorySink(target), listener);
+                }
+            } finally {
+                handle.finish();
+            }
+            report(archive, target, result);
+        } catch (IOException e) {
+            DialogDisplayer.getDefault().notifyLater(new NotifyDescriptor.Message(
+                    NbBundle.getMessage(DecompileArchiveAction.class, "MSG_DecompileArchiveError", archive.getName(), e.getMessage()),
+                    NotifyDescriptor.ERROR_MESSAGE));
+        }
+    }
+
+    private static void report(File archive, File target, BatchDecompiler.Result result) {
+        Map<String, String> failures = result.getFailures();
+        String summary = NbBundle.getMessage(DecompileArchiveAction.class,
+                result.isCancelled() ? "MSG_DecompileArchiveCancelled" : "MSG_DecompileArchiveDone",
+                archive.getName(),
+                result.getSucceeded(),
+                result.getEngine().getDisplayName(),
+                String.format(Locale.ROOT, "%.1f", result.getElapsedNanos() / 1e9),
+                String.format(Locale.ROOT, "%.1f", result.getClassesPerSecond()),
+                failures.size(),
+                target.getPath());
+        StatusDisplayer.getDefault().setStatusText(summary);
+        if (failures.isEmpty()) {
+            return;
+        }
+
+        StringBuilder message = new StringBuilder(summary).append("\n\n");
+        int shown = 0;
+        for (Map.Entry<String, String> failure : failures.entrySet()) {
+            if (shown++ == MAX_REPORTED_FAILURES) {
+                message.append("...\n");
+                break;
+            }
+            message.append(failure.getKey()).append(": ").append(failure.getValue()).append('\n');
+        }
+        DialogDisplayer.getDefault().notifyLater(new NotifyDescriptor.Message(message.toString(), NotifyDescriptor.WARNING_MESSAGE));
+    }
+}
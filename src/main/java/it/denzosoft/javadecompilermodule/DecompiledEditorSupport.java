@@ -1,6 +1,8 @@
 package it.denzosoft.javadecompilermodule;
 
+import it.denzosoft.javadecompilermodule.decompiler.DecompilerRegistry;
 import java.awt.Color;
+import java.awt.Rectangle;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
@@ -12,21 +14,34 @@ import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.awt.Component;
 import java.awt.Container;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import javax.swing.JEditorPane;
 import javax.swing.JScrollPane;
 import javax.swing.JViewport;
 import javax.swing.SwingUtilities;
+import javax.swing.text.BadLocationException;
 import javax.swing.text.EditorKit;
+import javax.swing.text.StyledDocument;
 import org.netbeans.api.editor.fold.FoldHierarchy;
 import org.netbeans.api.editor.settings.SimpleValueNames;
 import org.netbeans.modules.editor.NbEditorUtilities;
+import org.openide.awt.UndoRedo;
 import org.openide.cookies.CloseCookie;
 import org.openide.cookies.EditorCookie;
 import org.openide.cookies.OpenCookie;
 import org.openide.filesystems.FileObject;
 import org.openide.text.CloneableEditor;
 import org.openide.text.CloneableEditorSupport;
+import org.openide.text.NbDocument;
+import org.openide.util.RequestProcessor;
 import org.openide.windows.CloneableOpenSupport;
 
 /**
@@ -36,8 +51,32 @@ import org.openide.windows.CloneableOpenSupport;
 public class DecompiledEditorSupport extends CloneableEditorSupport
         implements OpenCookie, EditorCookie, CloseCookie {
 
+    private static final Logger LOG = Logger.getLogger(DecompiledEditorSupport.class.getName());
+    private static final RequestProcessor RP = new RequestProcessor("JavaDecompiler editor", 2, true);
+    private static final int SWAP_ATTEMPTS = 50;
+    private static final int SWAP_RETRY_MS = 100;
+    // Editors showing a document, re-laid out when line-number alignment is toggled
+    private static final Set<DecompiledEditorSupport> OPEN = Collections.newSetFromMap(new WeakHashMap<>());
+
+    static {
+        DecompilerRegistry.addSettingsListener(evt -> {
+            if (DecompilerRegistry.isLayoutChange(evt)) {
+                realignOpenEditors();
+            }
+        });
+    }
+
     private final ClassFileDataObject dataObject;
     private final DecompiledEnv decompiledEnv;
+    // Where the opened class is declared when the editor shows its outer class's source
+    private volatile int typeOffset = -1;
+    // Text the next document load starts with, and the open the engine still has to run for
+    private volatile String initialText;
+    private volatile DecompilationTrace initialTrace;
+    private volatile Decompiler.Opened decompilePending;
+    // Bumped on close, so late results do not touch a document that is gone
+    private final AtomicInteger loadGeneration = new AtomicInteger();
+    private boolean swapping;
 
     public DecompiledEditorSupport(ClassFileDataObject dataObject) {
         this(dataObject, new DecompiledEnv(dataObject));
@@ -104,6 +143,9 @@ public class DecompiledEditorSupport extends CloneableEditorSupport
             // Set gray background - needs to be done later as editor kit may override it
             applyReadOnlyBackground(pane);
 
+            // Nested classes show their outer class: scroll to the nested declaration
+            SwingUtilities.invokeLater(() -> showTypeDeclaration(pane));
+
             // Re-apply background if it gets changed
             pane.addPropertyChangeListener("background", new PropertyChangeListener() {
                 @Override
@@ -116,6 +158,24 @@ public class DecompiledEditorSupport extends CloneableEditorSupport
         }
     }
 
+    private void showTypeDeclaration(JEditorPane pane) {
+        int offset = typeOffset;
+        if (offset <= 0 || offset > pane.getDocument().getLength()) {
+            return;
+        }
+        try {
+            pane.setCaretPosition(offset);
+            Rectangle line = pane.modelToView(offset);
+            if (line != null) {
+                // Bring the declaration to the top of the viewport rather than just into view
+                line.height = pane.getVisibleRect().height;
+                pane.scrollRectToVisible(line);
+            }
+        } catch (BadLocationException e) {
+            // Document changed in the meantime; stay at the top
+        }
+    }
+
     private void applyReadOnlyBackground(final JEditorPane pane) {
         // Apply immediately
         setBackgroundRecursive(pane);
@@ -151,25 +211,181 @@ public class DecompiledEditorSupport extends CloneableEditorSupport
         return true;
     }
 
+    @Override
+    protected void notifyClosed() {
+        // Stop a decompilation nobody is waiting for any more
+        loadGeneration.incrementAndGet();
+        synchronized (OPEN) {
+            OPEN.remove(this);
+        }
+        Decompiler.cancel(dataObject.getPrimaryFile());
+        super.notifyClosed();
+    }
+
     /**
-     * Performs decompilation. No caching - always uses current decompiler settings.
+     * Performs decompilation with the settings captured when the class was opened.
+     * Repeat calls for unchanged bytecode are served from the source caches.
      */
-    String getDecompiledSource() {
-        System.out.println("[JavaDecompiler] getDecompiledSource called");
+    private Decompiler.EditorSource getDecompiledSource(Decompiler.Opened opened) {
+        FileObject fo = dataObject.getPrimaryFile();
         try {
-            FileObject fo = dataObject.getPrimaryFile();
-            System.out.println("[JavaDecompiler] Decompiling: " + fo.getPath());
-            String result = Decompiler.decompile(fo);
-            System.out.println("[JavaDecompiler] Decompilation complete, length: " + result.length());
-            return result;
+            Decompiler.EditorSource decompiled = Decompiler.decompileForEditor(opened);
+            typeOffset = decompiled.typeOffset;
+            return decompiled;
         } catch (Exception e) {
-            System.out.println("[JavaDecompiler] Decompilation error: " + e.getMessage());
-            e.printStackTrace();
-            return "// Error during decompilation: " + e.getMessage() + "\n" +
-                    "// " + e.getClass().getName();
+            LOG.log(Level.INFO, "Cannot decompile " + fo.getPath(), e);
+            return new Decompiler.EditorSource(errorText(e), -1, null);
+        }
+    }
+
+    private static String errorText(Exception e) {
+        return "// Error during decompilation: " + e.getMessage() + "\n" +
+                "// " + e.getClass().getName();
+    }
+
+    /**
+     * Chooses what the document is loaded with: the cached source if there is
+     * one, otherwise the class outline, replaced once the engine finishes.
+     */
+    private void prepareInitialText() {
+        FileObject fo = dataObject.getPrimaryFile();
+        try {
+            // Read once: the cache probe, the placeholder and the engine run share it
+            Decompiler.Opened opened = Decompiler.open(fo, true);
+            Decompiler.EditorSource cached = Decompiler.cachedForEditor(opened);
+            if (cached != null) {
+                typeOffset = cached.typeOffset;
+                initialText = cached.source;
+                initialTrace = cached.trace;
+                decompilePending = null;
+                return;
+            }
+            initialText = Decompiler.placeholder(opened);
+            decompilePending = opened;
+        } catch (IOException e) {
+            initialText = errorText(e);
+            decompilePending = null;
+        }
+    }
+
+    @Override
+    protected void loadFromStreamToKit(StyledDocument doc, InputStream stream, EditorKit kit)
+            throws IOException, BadLocationException {
+        String text = initialText;
+        if (text == null) {
+            super.loadFromStreamToKit(doc, stream, kit);
+            return;
+        }
+        // Insert the text as is, without encoding it to bytes and parsing it back
+        initialText = null;
+        DecompilationTrace trace = initialTrace;
+        initialTrace = null;
+        long started = System.nanoTime();
+        doc.insertString(0, text, null);
+        synchronized (OPEN) {
+            OPEN.add(this);
+        }
+        if (trace != null) {
+            trace.end(DecompilationTrace.Phase.DOCUMENT, started);
+            trace.log();
+        }
+        final Decompiler.Opened opened = decompilePending;
+        if (opened != null) {
+            decompilePending = null;
+            final int generation = loadGeneration.get();
+            RP.post(() -> {
+                Decompiler.EditorSource decompiled = getDecompiledSource(opened);
+                SwingUtilities.invokeLater(() -> swapIn(generation, decompiled, 0));
+            });
+        }
+    }
+
+    private static void realignOpenEditors() {
+        List<DecompiledEditorSupport> open;
+        synchronized (OPEN) {
+            open = new ArrayList<>(OPEN);
+        }
+        for (DecompiledEditorSupport support : open) {
+            RP.post(support::realign);
+        }
+    }
+
+    /**
+     * Shows the cached source again in the current line-number layout. The
+     * caches keep unaligned engine output, so no engine runs; an editor whose
+     * class is not cached (yet) keeps its text.
+     */
+    private void realign() {
+        FileObject fo = dataObject.getPrimaryFile();
+        final int generation = loadGeneration.get();
+        try {
+            final Decompiler.EditorSource cached = Decompiler.cachedForEditor(Decompiler.open(fo, true));
+            if (cached != null) {
+                typeOffset = cached.typeOffset;
+                SwingUtilities.invokeLater(() -> swapIn(generation, cached, 0));
+            }
+        } catch (IOException e) {
+            LOG.log(Level.INFO, "Cannot realign " + fo.getPath(), e);
         }
     }
 
+    /**
+     * Replaces the placeholder with the decompiled source, unless the editor
+     * was closed or reloaded meanwhile.
+     */
+    private void swapIn(final int generation, final Decompiler.EditorSource decompiled, final int attempt) {
+        if (generation != loadGeneration.get()) {
+            return;
+        }
+        final StyledDocument doc = getDocument();
+        if (doc == null) {
+            // Still loading the placeholder; try again shortly
+            if (attempt < SWAP_ATTEMPTS) {
+                RP.post(() -> SwingUtilities.invokeLater(() -> swapIn(generation, decompiled, attempt + 1)), SWAP_RETRY_MS);
+            }
+            return;
+        }
+        final String source = decompiled.source;
+        long started = System.nanoTime();
+        swapping = true;
+        try {
+            NbDocument.runAtomic(doc, () -> {
+                try {
+                    doc.remove(0, doc.getLength());
+                    doc.insertString(0, source, null);
+                } catch (BadLocationException e) {
+                    LOG.log(Level.INFO, "Cannot show decompiled source", e);
+                }
+            });
+        } finally {
+            swapping = false;
+        }
+        if (decompiled.trace != null) {
+            decompiled.trace.end(DecompilationTrace.Phase.DOCUMENT, started);
+            decompiled.trace.log();
+        }
+        // The swap is not a user edit: nothing to undo, nothing to save
+        UndoRedo.Manager undoRedo = getUndoRedo();
+        if (undoRedo != null) {
+            undoRedo.discardAllEdits();
+        }
+        notifyUnmodified();
+        JEditorPane[] panes = getOpenedPanes();
+        if (panes != null) {
+            for (JEditorPane pane : panes) {
+                showTypeDeclaration(pane);
+            }
+        }
+    }
+
+    @Override
+    protected boolean notifyModified() {
+        if (swapping) {
+            return true;
+        }
+        return super.notifyModified();
+    }
+
     /**
      * Environment for the decompiled editor.
      * Provides read-only access to the decompiled content.
@@ -191,8 +407,12 @@ public class DecompiledEditorSupport extends CloneableEditorSupport
 
         @Override
         public InputStream inputStream() throws IOException {
-            String source = editorSupport != null ? editorSupport.getDecompiledSource() : "// Decompilation failed";
-            return new ByteArrayInputStream(source.getBytes(StandardCharsets.UTF_8));
+            if (editorSupport == null) {
+                return new ByteArrayInputStream("// Decompilation failed".getBytes(StandardCharsets.UTF_8));
+            }
+            // The text itself is inserted by loadFromStreamToKit
+            editorSupport.prepareInitialText();
+            return new ByteArrayInputStream(new byte[0]);
         }
 
         @Override
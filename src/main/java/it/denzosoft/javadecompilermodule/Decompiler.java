@@ -1,18 +1,40 @@
 package it.denzosoft.javadecompilermodule;
 
+import it.denzosoft.javadecompilermodule.cache.CacheKey;
+import it.denzosoft.javadecompilermodule.cache.DiskSourceCache;
+import it.denzosoft.javadecompilermodule.cache.EngineWinners;
+import it.denzosoft.javadecompilermodule.cache.MemorySourceCache;
+import it.denzosoft.javadecompilermodule.decompiler.ArchiveClassProvider;
+import it.denzosoft.javadecompilermodule.decompiler.CircuitBreaker;
+import it.denzosoft.javadecompilermodule.decompiler.ClassFileScanner;
+import it.denzosoft.javadecompilermodule.decompiler.DecompilationJob;
+import it.denzosoft.javadecompilermodule.decompiler.DecompiledSource;
 import it.denzosoft.javadecompilermodule.decompiler.DecompilerEngine;
+import it.denzosoft.javadecompilermodule.decompiler.DecompilerMetrics;
 import it.denzosoft.javadecompilermodule.decompiler.DecompilerRegistry;
+import it.denzosoft.javadecompilermodule.decompiler.DegradedClass;
+import it.denzosoft.javadecompilermodule.decompiler.EngineRace;
+import it.denzosoft.javadecompilermodule.decompiler.EngineSelector;
+import it.denzosoft.javadecompilermodule.decompiler.OutlineEngine;
+import it.denzosoft.javadecompilermodule.decompiler.PrefetchingClassProvider;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Enumeration;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.netbeans.api.progress.ProgressHandle;
+import org.openide.awt.StatusDisplayer;
 import org.openide.filesystems.FileObject;
 import org.openide.filesystems.FileUtil;
+import org.openide.util.NbBundle;
 
 /**
  * Wrapper class for decompilation.
@@ -20,67 +42,272 @@ import org.openide.filesystems.FileUtil;
  */
 public class Decompiler {
 
+    // Jobs of the editors currently waiting for a decompilation, so closing a tab can abort them
+    private static final Map<FileObject, Runnable> RUNNING = new ConcurrentHashMap<>();
+    // Upper bound for loading dependencies before the engine starts; the rest load on demand
+    private static final long PRELOAD_WAIT_MS = 2_000;
+    // Hard time limit for oversized classes, whatever the configured limit
+    private static final int OVERSIZED_TIMEOUT_SECONDS = 15;
+
+    static {
+        // Engines get a fresh chance whenever the settings change, e.g. after raising the time limit
+        DecompilerRegistry.addSettingsListener(e -> CircuitBreaker.getDefault().reset());
+    }
+
     /**
      * Decompiles a .class file and returns the Java source code.
+     * Nested classes yield the source of their outermost class.
      *
      * @param classFile the FileObject representing the .class file
      * @return the decompiled Java source code
      * @throws Exception if decompilation fails
      */
     public static String decompile(FileObject classFile) throws Exception {
-        System.out.println("[JavaDecompiler] decompile called for: " + classFile);
-        File file = FileUtil.toFile(classFile);
-        if (file == null) {
-            // File might be inside a JAR/ZIP
-            System.out.println("[JavaDecompiler] File is inside archive, using decompileFromArchive");
-            return decompileFromArchive(classFile);
+        EditorSource decompiled = decompileForEditor(open(classFile, true));
+        decompiled.trace.log();
+        return decompiled.source;
+    }
+
+    /**
+     * Reads a class opened by the user. A nested or anonymous class is
+     * redirected to its outermost class, so one engine run (and one cache
+     * entry) serves the whole nest. The result is meant for one open: the
+     * cache probe, the placeholder and the engine run all use it.
+     */
+    static Opened open(FileObject classFile, boolean foreground) throws IOException {
+        DecompilationTrace trace = new DecompilationTrace(foreground);
+        long started = System.nanoTime();
+        byte[] bytecode = readBytes(classFile);
+        ClassFileScanner classInfo = Request.scan(bytecode);
+        FileObject outerFile = outermostFile(classFile, classInfo);
+        Opened opened = outerFile == null
+                ? new Opened(new Request(classFile, bytecode, classInfo, foreground), null, trace)
+                : new Opened(new Request(outerFile, readBytes(outerFile), foreground), classInfo, trace);
+        trace.end(DecompilationTrace.Phase.READ, started);
+        return opened;
+    }
+
+    /**
+     * Decompiles an opened class for display; the result tells where a
+     * nested type is. The caller logs the trace once the source is shown.
+     */
+    static EditorSource decompileForEditor(Opened opened) throws Exception {
+        Request request = opened.request;
+        String source;
+        DecompilationPrefetcher.foregroundStarted();
+        try {
+            source = decompile(request, opened.trace);
+        } finally {
+            DecompilationPrefetcher.foregroundFinished();
+        }
+        // Warm up the classes the user is likely to open next
+        DecompilationPrefetcher.schedule(request.classFile, request.classInfo);
+        return opened.editorSource(source);
+    }
+
+    /**
+     * Decompiles a class into the source caches, used for speculative prefetching.
+     * Only one engine runs: the recorded race winner or the selected engine.
+     */
+    static void warmUp(FileObject classFile) throws Exception {
+        Opened opened = open(classFile, false);
+        // Only the caches are filled, so the output is not aligned
+        decompileUnaligned(opened.request, opened.trace);
+        opened.trace.log();
+    }
+
+    /**
+     * Returns the class file of the outermost class of a nested class, or null
+     * if the class is top-level or its outermost class file cannot be found.
+     */
+    private static FileObject outermostFile(FileObject classFile, ClassFileScanner classInfo) {
+        if (classInfo == null) {
+            return null;
+        }
+        String top = classInfo.getTopLevelClass();
+        String self = classInfo.getThisClass();
+        int slash = top.lastIndexOf('/');
+        if (top.equals(self) || slash != self.lastIndexOf('/') || !top.regionMatches(0, self, 0, slash + 1)) {
+            return null;
         }
-        System.out.println("[JavaDecompiler] File is on filesystem: " + file);
-        return decompileFromFile(file, classFile);
+        FileObject folder = classFile.getParent();
+        return folder != null ? folder.getFileObject(top.substring(slash + 1), "class") : null;
     }
 
-    private static String decompileFromFile(File file, FileObject classFile) throws Exception {
-        final byte[] classBytes = readBytes(classFile);
-        final String internalName = getInternalClassName(classFile);
+    /**
+     * Aborts the decompilation an editor is waiting for, if any.
+     */
+    static void cancel(FileObject classFile) {
+        Runnable cancel = RUNNING.get(classFile);
+        if (cancel != null) {
+            cancel.run();
+        }
+    }
+
+    /**
+     * Returns the editor source of an opened class if it is already cached,
+     * without running an engine; null on a cache miss.
+     */
+    static EditorSource cachedForEditor(Opened opened) {
+        Request request = opened.request;
+        DecompiledSource cached = cached(request);
+        if (cached == null) {
+            return null;
+        }
+        opened.trace.setClassName(request.internalName);
+        opened.trace.setResult("cached");
+        return opened.editorSource(format(request, cached, opened.trace));
+    }
 
-        // Create class provider for loading dependencies
-        DecompilerEngine.ClassProvider classProvider = new DecompilerEngine.ClassProvider() {
+    /**
+     * Returns the stand-in shown while the class is being decompiled: its
+     * outline (signatures without method bodies) read straight from the class file.
+     */
+    static String placeholder(Opened opened) {
+        Request request = opened.request;
+        String engines = request.engine.getDisplayName();
+        if (request.raceEngines != null) {
+            StringBuilder names = new StringBuilder();
+            for (DecompilerEngine engine : request.raceEngines) {
+                names.append(names.length() > 0 ? ", " : "").append(engine.getDisplayName());
+            }
+            engines = names.toString();
+        }
+        String comment = "// Decompiling with " + engines + "...\n";
+        if (request.classInfo == null) {
+            return comment;
+        }
+        // Member classes sit next to their outer class
+        final FileObject folder = request.classFile.getParent();
+        DecompilerEngine.ClassProvider memberClasses = folder == null ? null : new DecompilerEngine.ClassProvider() {
             @Override
-            public boolean canLoad(String name) {
-                if (name.equals(internalName)) {
-                    return true;
-                }
-                FileObject parent = classFile.getParent();
-                if (parent != null) {
-                    String simpleName = name.substring(name.lastIndexOf('/') + 1);
-                    FileObject related = parent.getFileObject(simpleName, "class");
-                    return related != null;
-                }
-                return false;
+            public boolean canLoad(String internalName) {
+                return file(internalName) != null;
             }
 
             @Override
-            public byte[] load(String name) throws Exception {
-                if (name.equals(internalName)) {
-                    return classBytes;
-                }
-                FileObject parent = classFile.getParent();
-                if (parent != null) {
-                    String simpleName = name.substring(name.lastIndexOf('/') + 1);
-                    FileObject related = parent.getFileObject(simpleName, "class");
-                    if (related != null) {
-                        return readBytes(related);
-                    }
-                }
-                throw new IOException("Cannot load: " + name);
+            public byte[] load(String internalName) throws IOException {
+                return readBytes(file(internalName));
+            }
+
+            private FileObject file(String internalName) {
+                return folder.getFileObject(internalName.substring(internalName.lastIndexOf('/') + 1), "class");
             }
         };
+        try {
+            return OutlineEngine.render(request.bytecode, memberClasses, comment).format(request.preserveLineNumbers);
+        } catch (IllegalArgumentException e) {
+            // Let the engine report the broken class file
+            return comment;
+        }
+    }
+
+    /**
+     * Returns the cached source of a request, from the session cache or from disk.
+     * Only the first probe of a request counts in the cache metrics; the
+     * engine run probes again in case a prefetch stored the source meanwhile.
+     */
+    private static DecompiledSource cached(Request request) {
+        DecompilerMetrics metrics = DecompilerMetrics.getDefault();
+        boolean record = !request.cacheProbed;
+        request.cacheProbed = true;
+        MemorySourceCache memoryCache = MemorySourceCache.getDefault();
+        DecompiledSource cached = memoryCache.get(request.classFile, request.cacheKey);
+        if (record) {
+            metrics.recordCache("memory", cached != null);
+        }
+        if (cached != null) {
+            return cached;
+        }
+        DiskSourceCache diskCache = DiskSourceCache.getDefault();
+        if (diskCache != null) {
+            cached = diskCache.get(request.cacheKey);
+            if (record) {
+                metrics.recordCache("disk", cached != null);
+            }
+            if (cached != null) {
+                memoryCache.put(request.classFile, request.cacheKey, cached);
+                return cached;
+            }
+        }
+        return null;
+    }
 
-        return decompileInternal(internalName, classBytes, classProvider);
+    /**
+     * Returns the cached result of another engine than the selected one, without
+     * counting the probe in the cache metrics.
+     */
+    private static DecompiledSource cachedFor(Request request, DecompilerEngine engine) {
+        CacheKey cacheKey = request.cacheKeyFor(engine);
+        DecompiledSource cached = MemorySourceCache.getDefault().get(request.classFile, cacheKey);
+        DiskSourceCache diskCache = DiskSourceCache.getDefault();
+        if (cached == null && diskCache != null) {
+            cached = diskCache.get(cacheKey);
+            if (cached != null) {
+                MemorySourceCache.getDefault().put(request.classFile, cacheKey, cached);
+            }
+        }
+        return cached;
+    }
+
+    private static void notifyFallback(Request request, DecompilerEngine engine) {
+        if (request.foreground) {
+            StatusDisplayer.getDefault().setStatusText(NbBundle.getMessage(Decompiler.class, "MSG_FallbackUsed",
+                    request.classFile.getNameExt(), request.engine.getDisplayName(), engine.getDisplayName()));
+        }
     }
 
-    private static String decompileFromArchive(FileObject classFile) throws Exception {
+    private static String decompile(Request request, DecompilationTrace trace) throws Exception {
+        return format(request, decompileUnaligned(request, trace), trace);
+    }
+
+    /**
+     * Lays out engine output for display. Caches keep the unaligned output,
+     * so toggling line-number alignment never runs an engine again.
+     */
+    private static String format(Request request, DecompiledSource source, DecompilationTrace trace) {
+        long started = System.nanoTime();
+        String text = source.format(request.preserveLineNumbers);
+        trace.end(DecompilationTrace.Phase.ALIGN, started);
+        return text;
+    }
+
+    private static DecompiledSource decompileUnaligned(Request request, DecompilationTrace trace) throws Exception {
+        FileObject classFile = request.classFile;
+        trace.setClassName(request.internalName);
+
+        // Repeat opens are served from the session cache, then from disk
+        DecompiledSource cached = cached(request);
+        if (cached != null) {
+            trace.setResult("cached");
+            return cached;
+        }
+        if (request.knownWinner != null) {
+            // The winners were consulted to decide on a race, which only matters now that an engine runs
+            DecompilerMetrics.getDefault().recordCache("raceWinners", request.knownWinner);
+        }
+
+        File file = FileUtil.toFile(classFile);
+        if (file == null) {
+            // File might be inside a JAR/ZIP
+            return decompileFromArchive(request, trace);
+        }
+        return decompileFromFile(request, trace);
+    }
+
+    private static DecompiledSource decompileFromFile(Request request, DecompilationTrace trace) throws Exception {
+        FileObject classFile = request.classFile;
+        String internalName = request.internalName;
+
+        // Dependencies resolve across the project's classpath, not just the class's own folder
+        try (ClassPathClassProvider classProvider = ClassPathClassProvider.create(classFile, internalName, request.bytecode)) {
+            return decompileInternal(request, internalName, classProvider, trace);
+        }
+    }
+
+    private static DecompiledSource decompileFromArchive(Request request, DecompilationTrace trace) throws Exception {
         // Handle classes inside JAR/ZIP files
+        FileObject classFile = request.classFile;
         FileObject archiveRoot = FileUtil.getArchiveFile(classFile);
         if (archiveRoot == null) {
             throw new IOException("Cannot determine archive for: " + classFile.getPath());
@@ -91,121 +318,411 @@ public class Decompiler {
             throw new IOException("Cannot get file for archive: " + archiveRoot.getPath());
         }
 
-        final String internalName = getInternalClassName(classFile);
-        final Map<String, byte[]> classCache = new HashMap<>();
+        final String internalName = request.internalName;
 
-        // Load all classes from the JAR for dependency resolution
-        try (JarFile jarFile = new JarFile(archiveFile)) {
-            Enumeration<JarEntry> entries = jarFile.entries();
-            while (entries.hasMoreElements()) {
-                JarEntry entry = entries.nextElement();
-                if (entry.getName().endsWith(".class")) {
-                    String entryInternalName = entry.getName().replace(".class", "");
-                    try (InputStream is = jarFile.getInputStream(entry)) {
-                        classCache.put(entryInternalName, readAllBytes(is));
-                    }
-                }
+        // Index the archive; entries are inflated only when an engine asks for them
+        try (ArchiveClassProvider classProvider = new ArchiveClassProvider(archiveFile)) {
+            if (!classProvider.canLoad(internalName)) {
+                throw new IOException("Cannot find class in archive: " + internalName);
             }
+            return decompileInternal(request, internalName, classProvider, trace);
         }
+    }
 
-        byte[] mainClassBytes = classCache.get(internalName);
-        if (mainClassBytes == null) {
-            throw new IOException("Cannot find class in archive: " + internalName);
+    private static DecompiledSource decompileInternal(final Request request, final String internalName,
+            DecompilerEngine.ClassProvider directProvider, final DecompilationTrace trace) throws Exception {
+        // Load the dependencies in parallel up front, so the engine does not stall on I/O mid-analysis
+        final PrefetchingClassProvider classProvider = new PrefetchingClassProvider(directProvider);
+        if (request.classInfo != null) {
+            long started = System.nanoTime();
+            classProvider.preload(request.classInfo, PRELOAD_WAIT_MS);
+            trace.end(DecompilationTrace.Phase.DEPENDENCIES, started);
+        }
+        try {
+            if (request.raceEngines != null) {
+                return raceInternal(request, internalName, classProvider, trace);
+            }
+            return fallbackInternal(request, internalName, classProvider, trace);
+        } finally {
+            DecompilerMetrics metrics = DecompilerMetrics.getDefault();
+            metrics.recordDependencyLoads(classProvider.getReadCount());
+            metrics.recordCache("prefetch", classProvider.getHitCount(), classProvider.getMissCount());
         }
+    }
 
-        DecompilerEngine.ClassProvider classProvider = new DecompilerEngine.ClassProvider() {
-            @Override
-            public boolean canLoad(String name) {
-                return classCache.containsKey(name);
+    /**
+     * Runs the selected engine and, if it fails, the next engines of the fallback chain.
+     */
+    private static DecompiledSource fallbackInternal(final Request request, final String internalName,
+            final DecompilerEngine.ClassProvider classProvider, final DecompilationTrace trace) throws Exception {
+        final DecompilerMetrics metrics = DecompilerMetrics.getDefault();
+
+        // Engines that keep failing for this archive or class-file version are skipped for a while
+        CircuitBreaker breaker = CircuitBreaker.getDefault();
+        List<DecompilerEngine> chain = new ArrayList<>();
+        for (DecompilerEngine engine : DecompilerRegistry.getFallbackChain(request.engine)) {
+            if (breaker.allows(engine.getId(), request.breakerScopes)) {
+                chain.add(engine);
             }
+        }
+        if (chain.isEmpty()) {
+            chain.add(request.engine);
+        }
 
-            @Override
-            public byte[] load(String name) throws Exception {
-                byte[] bytes = classCache.get(name);
-                if (bytes == null) {
-                    throw new IOException("Cannot load: " + name);
-                }
-                return bytes;
+        final AtomicReference<DecompilationJob<DecompiledSource>> current = new AtomicReference<>();
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        Runnable cancel = () -> {
+            cancelled.set(true);
+            DecompilationJob<DecompiledSource> job = current.get();
+            if (job != null) {
+                job.cancel();
             }
         };
-
-        return decompileInternal(internalName, mainClassBytes, classProvider);
+        ProgressHandle handle = startProgress(request, chain.get(0).getDisplayName(), cancel);
+        StringBuilder failures = new StringBuilder();
+        try {
+            for (final DecompilerEngine engine : chain) {
+                if (handle != null && failures.length() > 0) {
+                    handle.progress(engine.getDisplayName());
+                }
+                if (engine != request.engine) {
+                    // A fallback engine's earlier result is cached under its own key only
+                    DecompiledSource earlier = cachedFor(request, engine);
+                    if (earlier != null) {
+                        trace.setEngine(engine.getId());
+                        trace.setResult("fallback");
+                        notifyFallback(request, engine);
+                        return earlier;
+                    }
+                }
+                int timeoutSeconds = request.timeoutSeconds(engine);
+                final byte[] bytecode = request.engineBytecode();
+                DecompilationJob<DecompiledSource> job = DecompilationJob.start(internalName,
+                        () -> request.annotate(metrics.decompile(engine, internalName, bytecode, classProvider)));
+                current.set(job);
+                if (cancelled.get()) {
+                    job.cancel();
+                }
+                long started = System.nanoTime();
+                try {
+                    DecompiledSource source = job.get(timeoutSeconds * 1000L);
+                    trace.end(DecompilationTrace.Phase.ENGINE, started);
+                    trace.setEngine(engine.getId());
+                    trace.setResult(engine == request.engine ? "decompiled" : "fallback");
+                    observe(request, engine, started, true);
+                    breaker.recordSuccess(engine.getId(), request.breakerScopes);
+                    // Never under the selected engine's key: it may recover, and its output must not be mislabeled
+                    store(request.classFile, request.cacheKeyFor(engine), source);
+                    if (engine != request.engine) {
+                        notifyFallback(request, engine);
+                    }
+                    return source;
+                } catch (TimeoutException e) {
+                    trace.end(DecompilationTrace.Phase.ENGINE, started);
+                    metrics.recordTimeout(engine.getId());
+                    observe(request, engine, started, false);
+                    breaker.recordFailure(engine.getId(), request.breakerScopes);
+                    failures.append("// ").append(engine.getDisplayName())
+                            .append(": timed out after ").append(timeoutSeconds).append(" s\n");
+                } catch (ExecutionException e) {
+                    trace.end(DecompilationTrace.Phase.ENGINE, started);
+                    observe(request, engine, started, false);
+                    breaker.recordFailure(engine.getId(), request.breakerScopes);
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    failures.append("// ").append(engine.getDisplayName())
+                            .append(": ").append(cause.getMessage()).append('\n');
+                } catch (CancellationException e) {
+                    metrics.recordCancellation(engine.getId());
+                    throw e;
+                }
+            }
+        } catch (CancellationException e) {
+            trace.setResult("cancelled");
+            return new DecompiledSource("// Decompilation cancelled\n");
+        } finally {
+            finishProgress(request, handle, cancel);
+        }
+        // Not cached: a later attempt may get a larger budget or recovered engines
+        return new DecompiledSource("// Decompilation failed\n" + failures +
+               "// Try another decompiler or a larger time limit in Tools > Options > Java > Decompiler\n");
     }
 
-    private static String decompileInternal(String internalName, byte[] bytecode,
-            DecompilerEngine.ClassProvider classProvider) throws Exception {
-        DecompilerEngine engine = DecompilerRegistry.getSelectedEngine();
-        boolean preserveLineNumbers = DecompilerRegistry.isPreserveLineNumbers();
+    /**
+     * Feeds the outcome of an engine run to the "Auto" engine selection.
+     */
+    private static void observe(Request request, DecompilerEngine engine, long startedNanos, boolean success) {
+        if (request.classInfo != null) {
+            EngineSelector.getDefault().record(engine.getId(), request.classInfo, request.bytecode.length,
+                    System.nanoTime() - startedNanos, success);
+        }
+    }
 
+    /**
+     * Runs all race engines on the class, shows the first good result and
+     * remembers the winner so the next open of this bytecode skips the race.
+     */
+    private static DecompiledSource raceInternal(Request request, String internalName,
+            DecompilerEngine.ClassProvider classProvider, DecompilationTrace trace) throws Exception {
+        StringBuilder names = new StringBuilder();
+        int timeoutSeconds = 0;
+        for (DecompilerEngine engine : request.raceEngines) {
+            if (names.length() > 0) {
+                names.append(", ");
+            }
+            names.append(engine.getDisplayName());
+            timeoutSeconds = Math.max(timeoutSeconds, request.timeoutSeconds(engine));
+        }
+        EngineRace race = EngineRace.start(request.raceEngines, internalName, request.engineBytecode(), classProvider);
+        Runnable cancel = race::cancel;
+        ProgressHandle handle = startProgress(request, names.toString(), cancel);
+        long started = System.nanoTime();
         try {
-            return engine.decompile(internalName, bytecode, classProvider, preserveLineNumbers);
-        } catch (Exception e) {
-            // If decompilation fails, return error message
-            return "// Decompilation failed with " + engine.getDisplayName() + "\n" +
-                   "// Error: " + e.getMessage() + "\n" +
-                   "// Try selecting a different decompiler in Tools > Options > Java > Decompiler\n";
+            EngineRace.Winner winner = race.get(timeoutSeconds * 1000L);
+            DecompilerEngine engine = winner.getEngine();
+            DecompiledSource source = request.annotate(winner.getSource());
+            trace.setEngine(engine.getId());
+            trace.setResult("race");
+            EngineWinners.getDefault().put(request.bytecodeHash, engine.getId());
+            store(request.classFile, request.cacheKeyFor(engine), source);
+            if (request.foreground) {
+                StatusDisplayer.getDefault().setStatusText(NbBundle.getMessage(Decompiler.class, "MSG_RaceWon",
+                        request.classFile.getNameExt(), engine.getDisplayName()));
+            }
+            return source;
+        } catch (TimeoutException e) {
+            for (DecompilerEngine engine : request.raceEngines) {
+                DecompilerMetrics.getDefault().recordTimeout(engine.getId());
+            }
+            return new DecompiledSource("// Decompilation with " + names + " timed out after " + timeoutSeconds + " s\n" +
+                   "// Increase the time limit in Tools > Options > Java > Decompiler\n");
+        } catch (CancellationException e) {
+            trace.setResult("cancelled");
+            return new DecompiledSource("// Decompilation cancelled\n");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            return new DecompiledSource("// Decompilation failed with " + names + "\n" +
+                   "// Error: " + cause.getMessage() + "\n");
+        } finally {
+            trace.end(DecompilationTrace.Phase.ENGINE, started);
+            finishProgress(request, handle, cancel);
+        }
+    }
+
+    /**
+     * Shows a cancellable progress indicator for editor requests; background requests get none.
+     */
+    private static ProgressHandle startProgress(Request request, String engineNames, final Runnable cancel) {
+        if (!request.foreground) {
+            return null;
+        }
+        RUNNING.put(request.classFile, cancel);
+        ProgressHandle handle = ProgressHandle.createHandle(
+                NbBundle.getMessage(Decompiler.class, "MSG_Decompiling", request.classFile.getNameExt(), engineNames),
+                () -> {
+                    cancel.run();
+                    return true;
+                });
+        handle.start();
+        return handle;
+    }
+
+    private static void finishProgress(Request request, ProgressHandle handle, Runnable cancel) {
+        if (handle != null) {
+            RUNNING.remove(request.classFile, cancel);
+            handle.finish();
+        }
+    }
+
+    private static void store(FileObject classFile, CacheKey cacheKey, DecompiledSource source) {
+        MemorySourceCache.getDefault().put(classFile, cacheKey, source);
+        DiskSourceCache diskCache = DiskSourceCache.getDefault();
+        if (diskCache != null) {
+            diskCache.put(cacheKey, source);
         }
     }
 
     /**
-     * Gets the internal class name from a FileObject.
-     * Example: com/example/MyClass for MyClass.class in com/example/
+     * Encodes the options that change engine output, for use in cache keys.
+     * Line-number alignment is not one of them: it is applied on read.
      */
-    private static String getInternalClassName(FileObject classFile) {
-        System.out.println("[JavaDecompiler] getInternalClassName for: " + classFile);
-        System.out.println("[JavaDecompiler] classFile.getPath(): " + classFile.getPath());
+    private static String cacheOptions(boolean oversized) {
+        // The threshold is part of the key so changing it does not serve stale stubs
+        return oversized ? "stubs=" + DegradedClass.MAX_METHOD_BYTES + "/" + DegradedClass.MAX_CLASS_CODE_BYTES : "";
+    }
 
-        // For files inside JAR/ZIP, get path relative to archive root
+    /**
+     * Returns the internal class name, e.g. com/example/MyClass, as declared in the bytecode.
+     * Only for unreadable class files it falls back to the file name.
+     */
+    private static String internalClassName(FileObject classFile, ClassFileScanner classInfo) {
+        if (classInfo != null) {
+            return classInfo.getThisClass();
+        }
         FileObject archiveFile = FileUtil.getArchiveFile(classFile);
-        System.out.println("[JavaDecompiler] archiveFile: " + archiveFile);
+        FileObject archiveRoot = archiveFile != null ? FileUtil.getArchiveRoot(archiveFile) : null;
+        String relativePath = archiveRoot != null ? FileUtil.getRelativePath(archiveRoot, classFile) : null;
+        if (relativePath != null && relativePath.endsWith(".class")) {
+            return relativePath.substring(0, relativePath.length() - 6);
+        }
+        return classFile.getName();
+    }
 
-        if (archiveFile != null) {
-            FileObject archiveRoot = FileUtil.getArchiveRoot(archiveFile);
-            System.out.println("[JavaDecompiler] archiveRoot: " + archiveRoot);
+    /**
+     * Decompiled source for an editor and the offset of the line declaring the
+     * opened class in it, or -1 to start at the top.
+     */
+    static final class EditorSource {
 
-            if (archiveRoot != null) {
-                String relativePath = FileUtil.getRelativePath(archiveRoot, classFile);
-                System.out.println("[JavaDecompiler] relativePath: " + relativePath);
+        final String source;
+        final int typeOffset;
+        /** Timings so far; the editor adds the document load and logs it. */
+        final DecompilationTrace trace;
 
-                if (relativePath != null && relativePath.endsWith(".class")) {
-                    String result = relativePath.substring(0, relativePath.length() - 6);
-                    System.out.println("[JavaDecompiler] returning (from archive): " + result);
-                    return result;
-                }
-            }
+        EditorSource(String source, int typeOffset, DecompilationTrace trace) {
+            this.source = source;
+            this.typeOffset = typeOffset;
+            this.trace = trace;
         }
+    }
 
-        String path = classFile.getPath();
+    /**
+     * A class opened by the user, see {@link #open(FileObject, boolean)}.
+     */
+    static final class Opened {
 
-        // Remove .class extension
-        if (path.endsWith(".class")) {
-            path = path.substring(0, path.length() - 6);
+        private final Request request;
+        /** The opened class if it is nested in the class of {@link #request}, else null. */
+        private final ClassFileScanner nested;
+        private final DecompilationTrace trace;
+
+        Opened(Request request, ClassFileScanner nested, DecompilationTrace trace) {
+            this.request = request;
+            this.nested = nested;
+            this.trace = trace;
         }
 
-        // Try to extract package structure from filesystem path
-        if (path.contains("/")) {
-            String[] parts = path.split("/");
-            // Find where the package structure likely starts
-            for (int i = 0; i < parts.length; i++) {
-                // Common source roots
-                if (parts[i].equals("classes") || parts[i].equals("bin") ||
-                    parts[i].equals("target") || parts[i].equals("build")) {
-                    StringBuilder sb = new StringBuilder();
-                    for (int j = i + 1; j < parts.length; j++) {
-                        if (sb.length() > 0) sb.append("/");
-                        sb.append(parts[j]);
-                    }
-                    if (sb.length() > 0) {
-                        System.out.println("[JavaDecompiler] returning (from path heuristic): " + sb.toString());
-                        return sb.toString();
+        EditorSource editorSource(String source) {
+            return new EditorSource(source, nested != null ? NestedTypeLocator.find(source, nested) : -1, trace);
+        }
+    }
+
+    /**
+     * Snapshot of the settings and inputs of one decompilation.
+     */
+    private static final class Request {
+
+        final FileObject classFile;
+        final byte[] bytecode;
+        final String bytecodeHash;
+        /** Structure of the class, or null if the bytes are not a readable class file. */
+        final ClassFileScanner classInfo;
+        final String internalName;
+        final DecompilerEngine engine;
+        /** Engines to race, or null to use {@link #engine} alone; always null in the background. */
+        final List<DecompilerEngine> raceEngines;
+        final boolean preserveLineNumbers;
+        final CacheKey cacheKey;
+        final boolean foreground;
+        /** Circuit breaker scopes: the class-file version and, if any, the enclosing archive. */
+        final String[] breakerScopes;
+        /** True if the class is too big to decompile in full; see {@link DegradedClass}. */
+        final boolean oversized;
+        /** Whether the race winners knew this class, or null if they were not consulted. */
+        final Boolean knownWinner;
+        /** Set once the source caches were probed for this request. */
+        volatile boolean cacheProbed;
+        private DegradedClass degraded;
+
+        Request(FileObject classFile, byte[] bytecode, boolean foreground) {
+            this(classFile, bytecode, scan(bytecode), foreground);
+        }
+
+        Request(FileObject classFile, byte[] bytecode, ClassFileScanner classInfo, boolean foreground) {
+            this.classFile = classFile;
+            this.bytecode = bytecode;
+            this.foreground = foreground;
+            this.bytecodeHash = CacheKey.hashBytecode(bytecode);
+            this.classInfo = classInfo;
+            this.internalName = internalClassName(classFile, classInfo);
+            String versionScope = CircuitBreaker.versionScope(ClassFileScanner.majorVersion(bytecode));
+            FileObject archive = FileUtil.getArchiveFile(classFile);
+            this.breakerScopes = archive != null
+                    ? new String[]{versionScope, CircuitBreaker.archiveScope(archive.getPath())}
+                    : new String[]{versionScope};
+            this.preserveLineNumbers = DecompilerRegistry.isPreserveLineNumbers();
+
+            DecompilerEngine selected = DecompilerRegistry.isAutoSelected() && classInfo != null
+                    ? EngineSelector.getDefault().choose(bytecodeHash, classInfo, DecompilerRegistry.getAvailableEngines())
+                    : DecompilerRegistry.getSelectedEngine();
+            List<DecompilerEngine> race = null;
+            Boolean knownWinner = null;
+            if (DecompilerRegistry.isRaceEnabled()) {
+                List<DecompilerEngine> candidates = DecompilerRegistry.getRaceEngines();
+                if (candidates.size() > 1) {
+                    DecompilerEngine winner = DecompilerRegistry.getEngine(EngineWinners.getDefault().get(bytecodeHash));
+                    knownWinner = winner != null;
+                    if (winner != null && candidates.contains(winner)) {
+                        // This class was raced before: go straight to the engine that won
+                        selected = winner;
+                    } else {
+                        selected = candidates.get(0);
+                        // A prefetch never starts every engine: it runs the first one, whose
+                        // cache key is the one a later race probes first
+                        race = foreground ? candidates : null;
                     }
                 }
             }
+            this.engine = selected;
+            this.raceEngines = race;
+            this.knownWinner = knownWinner;
+            // The outline engine reads no method bodies, so it takes any class as is
+            this.oversized = classInfo != null && !OutlineEngine.ID.equals(selected.getId())
+                    && DegradedClass.isOversized(classInfo);
+            this.cacheKey = cacheKeyFor(selected);
         }
 
-        // Fallback: just use the name without extension
-        System.out.println("[JavaDecompiler] returning (fallback): " + classFile.getName());
-        return classFile.getName();
+        private static ClassFileScanner scan(byte[] bytecode) {
+            try {
+                return ClassFileScanner.scan(bytecode);
+            } catch (IllegalArgumentException e) {
+                // Let the engine report the broken class file
+                return null;
+            }
+        }
+
+        CacheKey cacheKeyFor(DecompilerEngine engine) {
+            return CacheKey.create(bytecodeHash, engine.getId(), engine.getVersion(),
+                    cacheOptions(oversized));
+        }
+
+        /**
+         * Returns the class file to give to the engines: for oversized classes
+         * the one with the long method bodies cut out.
+         */
+        synchronized byte[] engineBytecode() {
+            if (!oversized) {
+                return bytecode;
+            }
+            if (degraded == null) {
+                degraded = DegradedClass.strip(bytecode, classInfo);
+            }
+            return degraded.getBytecode();
+        }
+
+        /**
+         * Adds the note on left-out method bodies to an engine result.
+         */
+        synchronized DecompiledSource annotate(DecompiledSource source) {
+            return degraded != null ? degraded.annotate(source) : source;
+        }
+
+        int timeoutSeconds(DecompilerEngine engine) {
+            int timeoutSeconds = DecompilerRegistry.getTimeoutSeconds(engine.getId());
+            if (!oversized) {
+                return timeoutSeconds;
+            }
+            return timeoutSeconds > 0 ? Math.min(timeoutSeconds, OVERSIZED_TIMEOUT_SECONDS) : OVERSIZED_TIMEOUT_SECONDS;
+        }
     }
 
     private static byte[] readBytes(FileObject fo) throws IOException {
@@ -0,0 +1,65 @@
+package it.denzosoft.javadecompilermodule;
+
+import it.denzosoft.javadecompilermodule.decompiler.ClassFileScanner;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the declaration of a nested class inside the decompiled source of its
+ * outermost class, so an editor opened for {@code Outer$Inner.class} can show
+ * the shared outer source scrolled to {@code Inner}.
+ */
+final class NestedTypeLocator {
+
+    private NestedTypeLocator() {
+    }
+
+    /**
+     * Returns the offset of the line declaring the nested class, or of its
+     * nearest named enclosing class for anonymous classes; -1 if not found.
+     *
+     * @param source the decompiled source of the outermost class
+     * @param nested the scanned nested class
+     */
+    static int find(String source, ClassFileScanner nested) {
+        String top = nested.getTopLevelClass();
+        Map<String, ClassFileScanner.InnerClass> entries = new HashMap<>();
+        for (ClassFileScanner.InnerClass entry : nested.getInnerClasses()) {
+            entries.put(entry.getName(), entry);
+        }
+
+        // Collect the named classes from the nested class up to (excluding) the top-level class
+        List<String> names = new ArrayList<>();
+        String current = nested.getThisClass();
+        String outer = nested.getOuterClass();
+        for (int depth = 0; current != null && !current.equals(top) && depth <= entries.size(); depth++) {
+            ClassFileScanner.InnerClass entry = entries.get(current);
+            if (entry != null && entry.getSimpleName() != null) {
+                names.add(0, entry.getSimpleName());
+            }
+            current = current.equals(nested.getThisClass()) ? outer : (entry != null ? entry.getOuterName() : null);
+        }
+        names.add(0, top.substring(top.lastIndexOf('/') + 1));
+
+        int position = -1;
+        for (String name : names) {
+            int found = findDeclaration(source, name, Math.max(position, 0));
+            if (found < 0) {
+                break;
+            }
+            position = found;
+        }
+        return position < 0 ? -1 : source.lastIndexOf('\n', position) + 1;
+    }
+
+    private static int findDeclaration(String source, String simpleName, int from) {
+        Pattern declaration = Pattern.compile(
+                "(?<![\\w$])(?:class|interface|enum|record)\\s+" + Pattern.quote(simpleName) + "(?![\\w$])");
+        Matcher matcher = declaration.matcher(source);
+        return matcher.find(from) ? matcher.start() : -1;
+    }
+}
@@ -0,0 +1,107 @@
+package it.denzosoft.javadecompilermodule.cache;
+
+import it.denzosoft.javadecompilermodule.decompiler.DecompilerEngine;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Identifies one decompilation result: bytecode content, engine, engine
+ * version and the options that affect the output.
+ * Keys compare by a SHA-1 digest, so they are fixed-size on disk.
+ */
+public final class CacheKey {
+
+    /** Size in bytes of the digest identifying a key. */
+    public static final int DIGEST_LENGTH = 20;
+
+    /**
+     * Version of the text produced by the engine wrappers (footers, padding).
+     * Bump it whenever a wrapper changes its output so stale entries are ignored.
+     */
+    private static final String OUTPUT_FORMAT = "2";
+
+    private final byte[] digest;
+    private final int hash;
+
+    CacheKey(byte[] digest) {
+        if (digest.length != DIGEST_LENGTH) {
+            throw new IllegalArgumentException("Invalid digest length: " + digest.length);
+        }
+        this.digest = digest;
+        this.hash = Arrays.hashCode(digest);
+    }
+
+    /**
+     * Creates the key for decompiling the given bytecode with an engine.
+     *
+     * @param bytecode the class bytecode
+     * @param engine the engine producing the output
+     * @param options the output-relevant options, e.g. "stubs=16384/262144"
+     */
+    public static CacheKey create(byte[] bytecode, DecompilerEngine engine, String options) {
+        return create(hashBytecode(bytecode), engine.getId(), engine.getVersion(), options);
+    }
+
+    /**
+     * Creates a key from a precomputed bytecode hash (see {@link #hashBytecode(byte[])}).
+     */
+    public static CacheKey create(String bytecodeHash, String engineId, String engineVersion, String options) {
+        MessageDigest md = newDigest();
+        String identity = OUTPUT_FORMAT + '|' + bytecodeHash + '|' + engineId + '|' + engineVersion + '|' + options;
+        return new CacheKey(md.digest(identity.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Returns the hex encoded SHA-1 of the bytecode.
+     */
+    public static String hashBytecode(byte[] bytecode) {
+        return toHex(newDigest().digest(bytecode));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // Every JRE is required to provide SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        final char[] digits = "0123456789abcdef".toCharArray();
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = digits[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = digits[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    byte[] digest() {
+        return digest;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof CacheKey)) {
+            return false;
+        }
+        CacheKey other = (CacheKey) obj;
+        return hash == other.hash && Arrays.equals(digest, other.digest);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return toHex(digest);
+    }
+}
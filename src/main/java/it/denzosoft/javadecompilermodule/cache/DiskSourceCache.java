@@ -0,0 +1,416 @@
+package it.denzosoft.javadecompilermodule.cache;
+
+import it.denzosoft.javadecompilermodule.decompiler.DecompiledSource;
+import it.denzosoft.javadecompilermodule.decompiler.DecompilerRegistry;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openide.modules.Places;
+
+/**
+ * Persistent cache of decompiled sources that survives IDE restarts.
+ * Sources are kept unaligned with their line mapping, so one entry serves
+ * both line-number layouts.
+ * <p>
+ * Sources are appended to a pack file. A memory-mapped index of fixed-size
+ * slots maps key digests to pack offsets and records the last access time.
+ * When the pack grows past the size cap it is compacted, keeping the most
+ * recently used entries.
+ */
+public final class DiskSourceCache implements Closeable {
+
+    private static final Logger LOG = Logger.getLogger(DiskSourceCache.class.getName());
+
+    private static final String CACHE_FOLDER = "javadecompiler";
+    private static final String PACK_FILE = "sources.pack";
+    private static final String INDEX_FILE = "sources.idx";
+
+    private static final int PACK_MAGIC = 0x4A445043; // "JDPC"
+    private static final int INDEX_MAGIC = 0x4A444958; // "JDIX"
+    private static final int FORMAT_VERSION = 2;
+
+    // Pack: magic, version, then records of [digest][int length][data], where data is
+    // [int mapping length][mapping ints][UTF-8 source]
+    private static final int PACK_HEADER = 8;
+    private static final int RECORD_HEADER = CacheKey.DIGEST_LENGTH + 4;
+
+    // Index: magic, version, slot count, reserved, then slots of
+    // [digest][long offset][int length][long last access]
+    private static final int INDEX_HEADER = 16;
+    private static final int INDEX_COUNT = 8;
+    private static final int SLOT_SIZE = 40;
+    private static final int SLOT_OFFSET = 20;
+    private static final int SLOT_LENGTH = 28;
+    private static final int SLOT_ACCESS = 32;
+    private static final int INITIAL_SLOTS = 1024;
+
+    // Compaction trims the pack to this fraction of the cap
+    private static final int COMPACT_PERCENT = 75;
+
+    private static DiskSourceCache defaultCache;
+    private static boolean defaultCacheFailed;
+
+    private final Path packPath;
+    private final Path indexPath;
+    private final Map<CacheKey, Integer> slots = new HashMap<>();
+    private long maxBytes;
+
+    private FileChannel pack;
+    private long packSize;
+    private FileChannel indexChannel;
+    private MappedByteBuffer index;
+    private int slotCapacity;
+    private int slotCount;
+
+    /**
+     * Opens (or creates) a cache in the given directory.
+     *
+     * @param directory directory holding the pack and index files
+     * @param maxBytes size cap of the pack file
+     * @throws IOException if the files cannot be opened
+     */
+    public DiskSourceCache(File directory, long maxBytes) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create cache directory: " + directory);
+        }
+        this.packPath = new File(directory, PACK_FILE).toPath();
+        this.indexPath = new File(directory, INDEX_FILE).toPath();
+        this.maxBytes = maxBytes;
+        pack = FileChannel.open(packPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        indexChannel = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (!loadIndex()) {
+            reset();
+        }
+    }
+
+    /**
+     * Returns the module-wide cache in the IDE cache directory,
+     * or null if disk caching is disabled or unavailable.
+     */
+    public static synchronized DiskSourceCache getDefault() {
+        if (!DecompilerRegistry.isDiskCacheEnabled()) {
+            return null;
+        }
+        long maxBytes = DecompilerRegistry.getDiskCacheSizeMb() * 1024L * 1024L;
+        if (defaultCache == null && !defaultCacheFailed) {
+            try {
+                defaultCache = new DiskSourceCache(Places.getCacheSubdirectory(CACHE_FOLDER), maxBytes);
+            } catch (IOException e) {
+                LOG.log(Level.INFO, "Disk cache unavailable", e);
+                defaultCacheFailed = true;
+            }
+        }
+        if (defaultCache != null) {
+            defaultCache.setMaxBytes(maxBytes);
+        }
+        return defaultCache;
+    }
+
+    /**
+     * Changes the size cap. Takes effect on the next insertion.
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the cached source for a key, or null on a miss.
+     */
+    public synchronized DecompiledSource get(CacheKey key) {
+        Integer slot = slots.get(key);
+        if (slot == null || pack == null) {
+            return null;
+        }
+        int base = slotBase(slot);
+        long offset = index.getLong(base + SLOT_OFFSET);
+        int length = index.getInt(base + SLOT_LENGTH);
+        try {
+            ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + length);
+            readFully(pack, record, offset);
+            record.flip();
+            byte[] digest = new byte[CacheKey.DIGEST_LENGTH];
+            record.get(digest);
+            if (!Arrays.equals(digest, key.digest()) || record.getInt() != length) {
+                // Index and pack disagree (e.g. interrupted compaction), drop the entry
+                slots.remove(key);
+                return null;
+            }
+            int mappingLength = length >= 4 ? record.getInt() : -1;
+            if (mappingLength < 0 || mappingLength > (length - 4) / 4) {
+                slots.remove(key);
+                return null;
+            }
+            int[] mapping = new int[mappingLength];
+            record.asIntBuffer().get(mapping);
+            int textOffset = RECORD_HEADER + 4 + mappingLength * 4;
+            index.putLong(base + SLOT_ACCESS, System.currentTimeMillis());
+            return new DecompiledSource(new String(record.array(), textOffset, RECORD_HEADER + length - textOffset,
+                    StandardCharsets.UTF_8), mapping);
+        } catch (IOException e) {
+            LOG.log(Level.INFO, "Cannot read cached source " + key, e);
+            return null;
+        }
+    }
+
+    /**
+     * Stores a source. Existing entries are kept as is, since keys are content hashes.
+     */
+    public synchronized void put(CacheKey key, DecompiledSource source) {
+        if (pack == null || slots.containsKey(key)) {
+            return;
+        }
+        byte[] text = source.getText().getBytes(StandardCharsets.UTF_8);
+        int[] mapping = source.getLineMapping();
+        int dataLength = 4 + mapping.length * 4 + text.length;
+        int recordSize = RECORD_HEADER + dataLength;
+        if (recordSize > maxBytes / 4) {
+            // A single huge source must not flush the whole cache
+            return;
+        }
+        try {
+            if (packSize + recordSize > maxBytes) {
+                compact(maxBytes * COMPACT_PERCENT / 100 - recordSize);
+            }
+            ByteBuffer record = ByteBuffer.allocate(recordSize);
+            record.put(key.digest()).putInt(dataLength).putInt(mapping.length);
+            for (int line : mapping) {
+                record.putInt(line);
+            }
+            record.put(text);
+            record.flip();
+            writeFully(pack, record, packSize);
+
+            int slot = slotCount;
+            ensureCapacity(slot + 1);
+            writeSlot(slot, key.digest(), packSize, dataLength, System.currentTimeMillis());
+            slotCount++;
+            index.putInt(INDEX_COUNT, slotCount);
+            slots.put(key, slot);
+            packSize += recordSize;
+        } catch (IOException e) {
+            LOG.log(Level.INFO, "Cannot write cached source " + key, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (pack == null) {
+            return;
+        }
+        index.force();
+        index = null;
+        slots.clear();
+        try {
+            pack.close();
+        } finally {
+            indexChannel.close();
+            pack = null;
+        }
+    }
+
+    /**
+     * Reads the existing index. Returns false if the files are missing or
+     * do not match the current format, in which case the cache starts empty.
+     */
+    private boolean loadIndex() throws IOException {
+        packSize = pack.size();
+        long indexSize = indexChannel.size();
+        if (packSize < PACK_HEADER || indexSize < INDEX_HEADER) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(PACK_HEADER);
+        readFully(pack, header, 0);
+        header.flip();
+        if (header.getInt() != PACK_MAGIC || header.getInt() != FORMAT_VERSION) {
+            return false;
+        }
+
+        // Validate before mapping: reset() cannot truncate a file that is still mapped on Windows
+        ByteBuffer indexHeader = ByteBuffer.allocate(INDEX_HEADER);
+        readFully(indexChannel, indexHeader, 0);
+        indexHeader.flip();
+        int capacity = (int) ((indexSize - INDEX_HEADER) / SLOT_SIZE);
+        int count = indexHeader.getInt(INDEX_COUNT);
+        if (indexHeader.getInt(0) != INDEX_MAGIC || indexHeader.getInt(4) != FORMAT_VERSION
+                || count < 0 || count > capacity) {
+            return false;
+        }
+
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexSize);
+        slotCapacity = capacity;
+
+        for (int slot = 0; slot < count; slot++) {
+            int base = slotBase(slot);
+            long offset = index.getLong(base + SLOT_OFFSET);
+            int length = index.getInt(base + SLOT_LENGTH);
+            if (offset < PACK_HEADER || length < 0 || offset + RECORD_HEADER + length > packSize) {
+                continue;
+            }
+            byte[] digest = new byte[CacheKey.DIGEST_LENGTH];
+            for (int i = 0; i < digest.length; i++) {
+                digest[i] = index.get(base + i);
+            }
+            slots.put(new CacheKey(digest), slot);
+        }
+        slotCount = count;
+        return true;
+    }
+
+    private void reset() throws IOException {
+        slots.clear();
+        pack.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(PACK_HEADER);
+        header.putInt(PACK_MAGIC).putInt(FORMAT_VERSION);
+        header.flip();
+        writeFully(pack, header, 0);
+        packSize = PACK_HEADER;
+
+        index = null;
+        indexChannel.truncate(0);
+        mapIndex(INITIAL_SLOTS);
+        index.putInt(0, INDEX_MAGIC);
+        index.putInt(4, FORMAT_VERSION);
+        index.putInt(INDEX_COUNT, 0);
+        slotCount = 0;
+    }
+
+    /**
+     * Rewrites the pack with the most recently used entries that fit in
+     * {@code targetBytes}, then rewrites the index in place.
+     */
+    private void compact(long targetBytes) throws IOException {
+        List<Entry> live = new ArrayList<>(slots.size());
+        for (Map.Entry<CacheKey, Integer> e : slots.entrySet()) {
+            int base = slotBase(e.getValue());
+            live.add(new Entry(e.getKey(), index.getLong(base + SLOT_OFFSET),
+                    index.getInt(base + SLOT_LENGTH), index.getLong(base + SLOT_ACCESS)));
+        }
+        live.sort((a, b) -> Long.compare(b.lastAccess, a.lastAccess));
+
+        Path tmpPath = packPath.resolveSibling(PACK_FILE + ".tmp");
+        List<Entry> kept = new ArrayList<>();
+        long position = PACK_HEADER;
+        try (FileChannel out = FileChannel.open(tmpPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(PACK_HEADER);
+            header.putInt(PACK_MAGIC).putInt(FORMAT_VERSION);
+            header.flip();
+            writeFully(out, header, 0);
+            for (Entry entry : live) {
+                long size = RECORD_HEADER + entry.length;
+                if (position + size > targetBytes) {
+                    break;
+                }
+                transferFully(pack, entry.offset, size, out, position);
+                entry.offset = position;
+                position += size;
+                kept.add(entry);
+            }
+            out.force(false);
+        }
+
+        pack.close();
+        try {
+            Files.move(tmpPath, packPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpPath, packPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+        pack = FileChannel.open(packPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        packSize = position;
+
+        // The index stays mapped; rewrite its slots for the new pack layout
+        slots.clear();
+        slotCount = 0;
+        for (Entry entry : kept) {
+            writeSlot(slotCount, entry.key.digest(), entry.offset, entry.length, entry.lastAccess);
+            slots.put(entry.key, slotCount);
+            slotCount++;
+        }
+        index.putInt(INDEX_COUNT, slotCount);
+        LOG.log(Level.FINE, "Compacted disk cache: kept {0} of {1} entries", new Object[]{kept.size(), live.size()});
+    }
+
+    private void ensureCapacity(int slots) throws IOException {
+        if (slots > slotCapacity) {
+            mapIndex(Math.max(slots, slotCapacity * 2));
+        }
+    }
+
+    private void mapIndex(int capacity) throws IOException {
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER + (long) capacity * SLOT_SIZE);
+        slotCapacity = capacity;
+    }
+
+    private void writeSlot(int slot, byte[] digest, long offset, int length, long lastAccess) {
+        int base = slotBase(slot);
+        for (int i = 0; i < digest.length; i++) {
+            index.put(base + i, digest[i]);
+        }
+        index.putLong(base + SLOT_OFFSET, offset);
+        index.putInt(base + SLOT_LENGTH, length);
+        index.putLong(base + SLOT_ACCESS, lastAccess);
+    }
+
+    private static int slotBase(int slot) {
+        return INDEX_HEADER + slot * SLOT_SIZE;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of cache file");
+            }
+            position += read;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void transferFully(FileChannel from, long position, long count, FileChannel to, long target) throws IOException {
+        to.position(target);
+        while (count > 0) {
+            long transferred = from.transferTo(position, count, to);
+            if (transferred <= 0) {
+                throw new IOException("Unexpected end of cache file");
+            }
+            position += transferred;
+            count -= transferred;
+        }
+    }
+
+    private static final class Entry {
+
+        final CacheKey key;
+        final int length;
+        final long lastAccess;
+        long offset;
+
+        Entry(CacheKey key, long offset, int length, long lastAccess) {
+            this.key = key;
+            this.offset = offset;
+            this.length = length;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package it.denzosoft.javadecompilermodule.cache;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openide.modules.Places;
+import org.openide.util.RequestProcessor;
+
+/**
+ * Remembers which engine won the race for a class, keyed by bytecode hash,
+ * so later opens of the same class go straight to the winning engine.
+ * The table is bounded and persisted as a small text file in the IDE cache directory.
+ */
+public final class EngineWinners {
+
+    private static final Logger LOG = Logger.getLogger(EngineWinners.class.getName());
+
+    private static final String CACHE_FOLDER = "javadecompiler";
+    private static final String WINNERS_FILE = "winners.txt";
+    private static final int MAX_ENTRIES = 20_000;
+    private static final int SAVE_DELAY_MS = 5_000;
+
+    private static final RequestProcessor RP = new RequestProcessor("JavaDecompiler engine winners", 1);
+    private static EngineWinners defaultWinners;
+
+    private final File file;
+    private final Map<String, String> winners = new LinkedHashMap<String, String>(256, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private final RequestProcessor.Task saveTask = RP.create(this::save);
+
+    EngineWinners(File file) {
+        this.file = file;
+        load();
+    }
+
+    /**
+     * Returns the module-wide table stored in the IDE cache directory.
+     */
+    public static synchronized EngineWinners getDefault() {
+        if (defaultWinners == null) {
+            defaultWinners = new EngineWinners(new File(Places.getCacheSubdirectory(CACHE_FOLDER), WINNERS_FILE));
+        }
+        return defaultWinners;
+    }
+
+    /**
+     * Returns the ID of the engine that won for the bytecode, or null if unknown.
+     *
+     * @param bytecodeHash see {@link CacheKey#hashBytecode(byte[])}
+     */
+    public synchronized String get(String bytecodeHash) {
+        return winners.get(bytecodeHash);
+    }
+
+    /**
+     * Records the winning engine for the bytecode. Written to disk shortly after.
+     */
+    public void put(String bytecodeHash, String engineId) {
+        synchronized (this) {
+            if (engineId.equals(winners.put(bytecodeHash, engineId))) {
+                return;
+            }
+        }
+        saveTask.schedule(SAVE_DELAY_MS);
+    }
+
+    /**
+     * Forgets all recorded winners.
+     */
+    public void clear() {
+        synchronized (this) {
+            winners.clear();
+        }
+        saveTask.schedule(0);
+    }
+
+    private void load() {
+        if (!file.isFile()) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int space = line.indexOf(' ');
+                if (space > 0) {
+                    winners.put(line.substring(0, space), line.substring(space + 1));
+                }
+            }
+        } catch (IOException e) {
+            LOG.log(Level.INFO, "Cannot read engine winners", e);
+        }
+    }
+
+    private void save() {
+        List<Map.Entry<String, String>> entries;
+        synchronized (this) {
+            // Least recently used first, so reloading restores the access order
+            entries = new ArrayList<>(winners.size());
+            for (Map.Entry<String, String> entry : winners.entrySet()) {
+                entries.add(new AbstractMap.SimpleImmutableEntry<>(entry));
+            }
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, String> entry : entries) {
+                    writer.write(entry.getKey());
+                    writer.write(' ');
+                    writer.write(entry.getValue());
+                    writer.newLine();
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOG.log(Level.INFO, "Cannot write engine winners", e);
+        }
+    }
+}
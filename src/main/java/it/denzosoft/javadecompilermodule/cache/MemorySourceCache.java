@@ -0,0 +1,170 @@
+package it.denzosoft.javadecompilermodule.cache;
+
+import it.denzosoft.javadecompilermodule.decompiler.DecompiledSource;
+import it.denzosoft.javadecompilermodule.decompiler.DecompilerRegistry;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.openide.filesystems.FileObject;
+
+/**
+ * Session cache of decompiled sources, bounded by total size.
+ * Values are softly referenced so the garbage collector can reclaim them
+ * under memory pressure; the least recently used entries are evicted first.
+ * Entries are keyed by FileObject identity plus the {@link CacheKey}.
+ */
+public final class MemorySourceCache {
+
+    // About 16 MB of source text
+    private static final long DEFAULT_MAX_CHARS = 8L * 1024 * 1024;
+
+    private static MemorySourceCache defaultCache;
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final ReferenceQueue<DecompiledSource> collected = new ReferenceQueue<>();
+    private final long maxChars;
+    private long totalChars;
+
+    public MemorySourceCache(long maxChars) {
+        this.maxChars = maxChars;
+    }
+
+    /**
+     * Returns the module-wide cache. It is cleared whenever the decompiler
+     * settings change, except for the line-number layout: entries are kept
+     * unaligned and serve both layouts.
+     */
+    public static synchronized MemorySourceCache getDefault() {
+        if (defaultCache == null) {
+            final MemorySourceCache cache = new MemorySourceCache(DEFAULT_MAX_CHARS);
+            DecompilerRegistry.addSettingsListener(evt -> {
+                if (!DecompilerRegistry.isLayoutChange(evt)) {
+                    cache.clear();
+                }
+            });
+            defaultCache = cache;
+        }
+        return defaultCache;
+    }
+
+    /**
+     * Returns the cached source, or null on a miss.
+     */
+    public synchronized DecompiledSource get(FileObject file, CacheKey cacheKey) {
+        expungeCollected();
+        Key key = new Key(file, cacheKey);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        DecompiledSource source = entry.get();
+        if (source == null) {
+            remove(key);
+        }
+        return source;
+    }
+
+    /**
+     * Stores a source, evicting least recently used entries to stay within the budget.
+     */
+    public synchronized void put(FileObject file, CacheKey cacheKey, DecompiledSource source) {
+        expungeCollected();
+        int chars = source.size();
+        if (chars > maxChars) {
+            return;
+        }
+        Key key = new Key(file, cacheKey);
+        remove(key);
+        entries.put(key, new Entry(key, source, chars, collected));
+        totalChars += chars;
+
+        Iterator<Entry> it = entries.values().iterator();
+        while (totalChars > maxChars && it.hasNext()) {
+            Entry eldest = it.next();
+            it.remove();
+            totalChars -= eldest.chars;
+        }
+    }
+
+    /**
+     * Drops every entry of a file, e.g. after it changed on disk.
+     */
+    public synchronized void invalidate(FileObject file) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.key.file == file) {
+                it.remove();
+                totalChars -= entry.chars;
+            }
+        }
+    }
+
+    /**
+     * Drops all entries.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        totalChars = 0;
+        expungeCollected();
+    }
+
+    private void remove(Key key) {
+        Entry old = entries.remove(key);
+        if (old != null) {
+            totalChars -= old.chars;
+        }
+    }
+
+    /**
+     * Removes entries whose value was reclaimed by the garbage collector.
+     */
+    private void expungeCollected() {
+        Entry entry;
+        while ((entry = (Entry) collected.poll()) != null) {
+            // Only remove the entry if it was not replaced meanwhile
+            if (entries.get(entry.key) == entry) {
+                remove(entry.key);
+            }
+        }
+    }
+
+    private static final class Key {
+
+        final FileObject file;
+        final CacheKey cacheKey;
+
+        Key(FileObject file, CacheKey cacheKey) {
+            this.file = file;
+            this.cacheKey = cacheKey;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return file == other.file && cacheKey.equals(other.cacheKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(file) * 31 + cacheKey.hashCode();
+        }
+    }
+
+    private static final class Entry extends SoftReference<DecompiledSource> {
+
+        final Key key;
+        final int chars;
+
+        Entry(Key key, DecompiledSource source, int chars, ReferenceQueue<DecompiledSource> queue) {
+            super(source, queue);
+            this.key = key;
+            this.chars = chars;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package it.denzosoft.javadecompilermodule.cli;
+
+import it.denzosoft.javadecompilermodule.decompiler.ArchiveClassProvider;
+import it.denzosoft.javadecompilermodule.decompiler.BatchDecompiler;
+import it.denzosoft.javadecompilermodule.decompiler.ClassFileScanner;
+import it.denzosoft.javadecompilermodule.decompiler.DecompilerEngine;
+import it.denzosoft.javadecompilermodule.decompiler.DecompilerRegistry;
+import it.denzosoft.javadecompilermodule.decompiler.DirectoryClassProvider;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Headless batch decompiler. Runs on a plain JVM, without the NetBeans runtime.
+ * <p>
+ * Usage: {@code java -cp <module jar and engine jars> it.denzosoft.javadecompilermodule.cli.DecompilerCli
+ * [options] <input>...}, where each input is a class directory, a JAR/ZIP file,
+ * a single .class file or {@code @file} listing further inputs one per line.
+ */
+public final class DecompilerCli {
+
+    private static final int EXIT_OK = 0;
+    private static final int EXIT_FAILURES = 1;
+    private static final int EXIT_USAGE = 2;
+
+    private String engineId = "cfr";
+    private File outputDir = new File("decompiled");
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean preserveLineNumbers = true;
+    private int timeoutSeconds;
+    private boolean quiet;
+    private final List<File> inputs = new ArrayList<>();
+    private final List<File> classpath = new ArrayList<>();
+
+    private DecompilerCli() {
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * Runs the decompiler and returns the process exit code.
+     */
+    public static int run(String[] args, PrintStream out, PrintStream err) {
+        DecompilerCli cli = new DecompilerCli();
+        try {
+            if (!cli.parse(args, out)) {
+                return EXIT_OK;
+            }
+        } catch (IllegalArgumentException | IOException e) {
+            err.println("Error: " + e.getMessage());
+            printUsage(err);
+            return EXIT_USAGE;
+        }
+        try {
+            return cli.execute(out, err);
+        } catch (IOException e) {
+            err.println("Error: " + e.getMessage());
+            return EXIT_FAILURES;
+        }
+    }
+
+    /**
+     * Parses the command line; returns false if only help was requested.
+     */
+    private boolean parse(String[] args, PrintStream out) throws IOException {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-h":
+                case "--help":
+                    printUsage(out);
+                    return false;
+                case "-e":
+                case "--engine":
+                    engineId = value(args, ++i, arg);
+                    break;
+                case "-o":
+                case "--output":
+                    outputDir = new File(value(args, ++i, arg));
+                    break;
+                case "-t":
+                case "--threads":
+                    try {
+                        threads = Integer.parseInt(value(args, ++i, arg));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid thread count: " + args[i]);
+                    }
+                    break;
+                case "--timeout":
+                    try {
+                        timeoutSeconds = Integer.parseInt(value(args, ++i, arg));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid timeout: " + args[i]);
+                    }
+                    break;
+                case "-cp":
+                case "--classpath":
+                    for (String entry : value(args, ++i, arg).split(File.pathSeparator)) {
+                        if (!entry.isEmpty()) {
+                            classpath.add(new File(entry));
+                        }
+                    }
+                    break;
+                case "--no-line-numbers":
+                    preserveLineNumbers = false;
+                    break;
+                case "-q":
+                case "--quiet":
+                    quiet = true;
+                    break;
+                default:
+                    if (arg.startsWith("@")) {
+                        addListFile(new File(arg.substring(1)));
+                    } else if (arg.startsWith("-")) {
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                    } else {
+                        inputs.add(new File(arg));
+                    }
+            }
+        }
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("No input given");
+        }
+        if (DecompilerRegistry.getEngine(engineId) == null) {
+            throw new IllegalArgumentException("Unknown engine: " + engineId);
+        }
+        return true;
+    }
+
+    private void addListFile(File listFile) throws IOException {
+        for (String line : Files.readAllLines(listFile.toPath(), StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                inputs.add(new File(line));
+            }
+        }
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    private int execute(final PrintStream out, PrintStream err) throws IOException {
+        DecompilerEngine engine = DecompilerRegistry.getEngine(engineId);
+        CompositeClassProvider classProvider = new CompositeClassProvider();
+        try {
+            Set<String> classes = new LinkedHashSet<>();
+            for (File input : inputs) {
+                classes.addAll(classProvider.addInput(input));
+            }
+            for (File entry : classpath) {
+                classProvider.addClasspathEntry(entry);
+            }
+            if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+                throw new IOException("Cannot create output directory: " + outputDir);
+            }
+
+            BatchDecompiler.Listener listener = null;
+            if (!quiet) {
+                listener = (internalName, nanos, failure) -> {
+                    String time = String.format(Locale.ROOT, "%9.1f ms", nanos / 1e6);
+                    if (failure == null) {
+                        out.println("OK   " + time + "  " + internalName);
+                    } else {
+                        out.println("FAIL " + time + "  " + internalName + "  " + failure);
+                    }
+                };
+            }
+
+            BatchDecompiler batch = new BatchDecompiler(engine, classProvider, preserveLineNumbers, threads);
+            batch.setTimeoutMillis(timeoutSeconds * 1000L);
+            BatchDecompiler.Result result = batch.run(new ArrayList<>(classes),
+                    BatchDecompiler.directorySink(outputDir), listener);
+
+            out.println(String.format(Locale.ROOT, "%d classes decompiled with %s in %.1f s (%.1f classes/s), %d failed",
+                    result.getSucceeded(), engine.getDisplayName(), result.getElapsedNanos() / 1e9,
+                    result.getClassesPerSecond(), result.getFailures().size()));
+            for (Map.Entry<String, String> failure : result.getFailures().entrySet()) {
+                err.println("Failed: " + failure.getKey() + ": " + failure.getValue());
+            }
+            return result.getFailures().isEmpty() ? EXIT_OK : EXIT_FAILURES;
+        } finally {
+            classProvider.close();
+        }
+    }
+
+    private static void printUsage(PrintStream out) {
+        StringBuilder engines = new StringBuilder();
+        for (DecompilerEngine engine : DecompilerRegistry.getAvailableEngines()) {
+            if (engines.length() > 0) {
+                engines.append(", ");
+            }
+            engines.append(engine.getId());
+        }
+        out.println("Usage: DecompilerCli [options] <input>...");
+        out.println("Inputs: class directories, JAR/ZIP files, .class files, or @file listing inputs");
+        out.println("Options:");
+        out.println("  -e, --engine <id>        decompiler engine (" + engines + "), default cfr");
+        out.println("  -o, --output <dir>       output directory, default ./decompiled");
+        out.println("  -t, --threads <n>        worker threads, default: number of cores");
+        out.println("  -cp, --classpath <path>  additional JARs/directories to resolve dependencies");
+        out.println("  --timeout <seconds>      time limit per class, default: none");
+        out.println("  --no-line-numbers        do not align output to original line numbers");
+        out.println("  -q, --quiet              do not print per-class timing");
+        out.println("  -h, --help               show this help");
+    }
+
+    /**
+     * Resolves classes from all inputs first, then from the extra classpath.
+     */
+    private static final class CompositeClassProvider implements DecompilerEngine.ClassProvider {
+
+        private final List<DecompilerEngine.ClassProvider> providers = new ArrayList<>();
+        private final List<ArchiveClassProvider> archives = new ArrayList<>();
+        private final Map<String, File> looseClasses = new HashMap<>();
+
+        /**
+         * Registers an input and returns the classes it contributes to the batch.
+         */
+        List<String> addInput(File input) throws IOException {
+            if (input.isDirectory()) {
+                DirectoryClassProvider provider = new DirectoryClassProvider(input);
+                providers.add(provider);
+                return BatchDecompiler.topLevelClasses(provider.getClassNames());
+            }
+            if (!input.isFile()) {
+                throw new IOException("Input not found: " + input);
+            }
+            if (input.getName().endsWith(".class")) {
+                String internalName;
+                try {
+                    internalName = ClassFileScanner.scan(Files.readAllBytes(input.toPath())).getThisClass();
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Not a class file: " + input, e);
+                }
+                looseClasses.put(internalName, input);
+                List<String> result = new ArrayList<>();
+                result.add(internalName);
+                return result;
+            }
+            ArchiveClassProvider archive = new ArchiveClassProvider(input);
+            archives.add(archive);
+            providers.add(archive);
+            return BatchDecompiler.topLevelClasses(archive.getIndex().getClassNames());
+        }
+
+        void addClasspathEntry(File entry) throws IOException {
+            if (entry.isDirectory()) {
+                providers.add(new DirectoryClassProvider(entry));
+            } else if (entry.isFile()) {
+                ArchiveClassProvider archive = new ArchiveClassProvider(entry);
+                archives.add(archive);
+                providers.add(archive);
+            }
+        }
+
+        @Override
+        public boolean canLoad(String internalName) {
+            if (looseClasses.containsKey(internalName)) {
+                return true;
+            }
+            for (DecompilerEngine.ClassProvider provider : providers) {
+                if (provider.canLoad(internalName)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public byte[] load(String internalName) throws Exception {
+            File loose = looseClasses.get(internalName);
+            if (loose != null) {
+                return Files.readAllBytes(loose.toPath());
+            }
+            for (DecompilerEngine.ClassProvider provider : providers) {
+                if (provider.canLoad(internalName)) {
+                    return provider.load(internalName);
+                }
+            }
+            throw new IOException("Cannot load: " + internalName);
+        }
+
+        @Override
+        public String getScopeId() {
+            // The inputs do not change while the batch runs
+            return "cli:" + System.identityHashCode(this);
+        }
+
+        void close() {
+            for (ArchiveClassProvider archive : archives) {
+                archive.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package it.denzosoft.javadecompilermodule.decompiler;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Class provider backed by a JAR/ZIP archive.
+ * Uses the shared {@link ArchiveIndex} of the archive, so the central directory
+ * is read once per archive and entries are inflated only when an engine asks
+ * for them.
+ */
+public class ArchiveClassProvider implements DecompilerEngine.ClassProvider, Closeable {
+
+    private final ArchiveIndex index;
+    private boolean closed;
+
+    public ArchiveClassProvider(File archive) throws IOException {
+        this.index = ArchiveIndexService.getDefault().acquire(archive);
+    }
+
+    /**
+     * Returns the shared index this provider reads from.
+     */
+    public ArchiveIndex getIndex() {
+        return index;
+    }
+
+    @Override
+    public boolean canLoad(String internalName) {
+        return index.contains(internalName);
+    }
+
+    @Override
+    public byte[] load(String internalName) throws Exception {
+        return index.load(internalName);
+    }
+
+    @Override
+    public String getScopeId() {
+        return "archive:" + index.getScopeId();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            index.release();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package it.denzosoft.javadecompilermodule.decompiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Central-directory index of one JAR/ZIP archive, shared through
+ * {@link ArchiveIndexService}. Entries are inflated on demand and the bytes
+ * are kept softly, so every user of the archive pays only once for the
+ * entries it reads.
+ * <p>
+ * Instances are reference counted: obtain them with
+ * {@link ArchiveIndexService#acquire(File)} and hand them back with {@link #release()}.
+ */
+public final class ArchiveIndex {
+
+    private static final Logger LOG = Logger.getLogger(ArchiveIndex.class.getName());
+    private static final String CLASS_SUFFIX = ".class";
+
+    private final File archive;
+    private final long lastModified;
+    private final long length;
+    private final ZipFile zipFile;
+    private final Map<String, ZipEntry> classes;
+    private final Map<String, SoftReference<byte[]>> bytes = new ConcurrentHashMap<>();
+    private final ArchiveIndexService service;
+
+    // Guarded by the service
+    int references;
+    long lastReleased;
+    boolean retired;
+
+    ArchiveIndex(ArchiveIndexService service, File archive) throws IOException {
+        this.service = service;
+        this.archive = archive;
+        this.lastModified = archive.lastModified();
+        this.length = archive.length();
+        this.zipFile = new ZipFile(archive);
+        this.classes = buildIndex(zipFile);
+    }
+
+    /**
+     * Maps internal class names to their entries. This walks the central
+     * directory only, nothing is inflated.
+     */
+    private static Map<String, ZipEntry> buildIndex(ZipFile zipFile) {
+        Map<String, ZipEntry> index = new HashMap<>(zipFile.size() * 4 / 3 + 1);
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            String name = entry.getName();
+            if (!entry.isDirectory() && name.endsWith(CLASS_SUFFIX)) {
+                index.put(name.substring(0, name.length() - CLASS_SUFFIX.length()), entry);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns the archive file.
+     */
+    public File getArchive() {
+        return archive;
+    }
+
+    /**
+     * Returns an id of the archive contents: its path plus the timestamp and
+     * size it was indexed with.
+     */
+    public String getScopeId() {
+        return archive.getAbsolutePath() + '@' + lastModified + ':' + length;
+    }
+
+    /**
+     * Returns the internal names of all classes in the archive.
+     */
+    public Set<String> getClassNames() {
+        return Collections.unmodifiableSet(classes.keySet());
+    }
+
+    /**
+     * Checks if the archive contains a class.
+     */
+    public boolean contains(String internalName) {
+        return classes.containsKey(internalName);
+    }
+
+    /**
+     * Loads the bytecode of a class, inflating the entry on first access.
+     *
+     * @throws IOException if the class is missing or cannot be read
+     */
+    public byte[] load(String internalName) throws IOException {
+        SoftReference<byte[]> ref = bytes.get(internalName);
+        byte[] data = ref != null ? ref.get() : null;
+        if (data != null) {
+            return data;
+        }
+        ZipEntry entry = classes.get(internalName);
+        if (entry == null) {
+            throw new IOException("Cannot load: " + internalName);
+        }
+        data = readEntry(entry);
+        bytes.put(internalName, new SoftReference<>(data));
+        return data;
+    }
+
+    /**
+     * Returns this index to the service. It must not be used afterwards.
+     */
+    public void release() {
+        service.release(this);
+    }
+
+    /**
+     * Checks whether the archive on disk is still the one that was indexed.
+     */
+    boolean isCurrent() {
+        return archive.lastModified() == lastModified && archive.length() == length;
+    }
+
+    void close() {
+        bytes.clear();
+        try {
+            zipFile.close();
+        } catch (IOException e) {
+            LOG.log(Level.FINE, "Cannot close " + archive, e);
+        }
+    }
+
+    private byte[] readEntry(ZipEntry entry) throws IOException {
+        try (InputStream is = zipFile.getInputStream(entry)) {
+            long size = entry.getSize();
+            if (size < 0 || size > Integer.MAX_VALUE) {
+                return readAll(is);
+            }
+            byte[] data = new byte[(int) size];
+            int offset = 0;
+            while (offset < data.length) {
+                int len = is.read(data, offset, data.length - offset);
+                if (len < 0) {
+                    throw new IOException("Truncated entry: " + entry.getName());
+                }
+                offset += len;
+            }
+            return data;
+        }
+    }
+
+    private static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int len;
+        while ((len = is.read(buffer)) != -1) {
+            baos.write(buffer, 0, len);
+        }
+        return baos.toByteArray();
+    }
+}
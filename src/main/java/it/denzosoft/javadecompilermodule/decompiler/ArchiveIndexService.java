@@ -0,0 +1,123 @@
+package it.denzosoft.javadecompilermodule.decompiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Module-wide registry of {@link ArchiveIndex} instances, one per archive.
+ * <p>
+ * An index is reused as long as the archive path, modification time and size
+ * are unchanged. Unused indexes are closed after being idle for a while; the
+ * inflated entry bytes they cache are softly held, so the collector reclaims
+ * them when the heap runs low.
+ */
+public final class ArchiveIndexService {
+
+    private static final long IDLE_TIMEOUT_MS = 60_000;
+    private static final long REAPER_PERIOD_MS = 20_000;
+
+    private static final ArchiveIndexService DEFAULT = new ArchiveIndexService();
+
+    private final Map<String, ArchiveIndex> indexes = new HashMap<>();
+    private final ScheduledExecutorService reaper;
+    private ScheduledFuture<?> reaperTask;
+
+    private ArchiveIndexService() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "JavaDecompiler archive index reaper");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        this.reaper = executor;
+    }
+
+    /**
+     * Returns the shared service.
+     */
+    public static ArchiveIndexService getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns the index of an archive, building it if needed.
+     * The caller must {@link ArchiveIndex#release() release} it when done.
+     *
+     * @throws IOException if the archive cannot be opened
+     */
+    public ArchiveIndex acquire(File archive) throws IOException {
+        String path = archive.getAbsolutePath();
+        synchronized (this) {
+            ArchiveIndex index = indexes.get(path);
+            if (index != null && index.isCurrent()) {
+                index.references++;
+                DecompilerMetrics.getDefault().recordCache("archiveIndex", true);
+                return index;
+            }
+        }
+        DecompilerMetrics.getDefault().recordCache("archiveIndex", false);
+
+        // Reading the central directory is done outside the lock
+        ArchiveIndex created = new ArchiveIndex(this, archive);
+        synchronized (this) {
+            ArchiveIndex existing = indexes.get(path);
+            if (existing != null && existing.isCurrent()) {
+                // Another thread indexed the same archive meanwhile
+                existing.references++;
+                created.close();
+                return existing;
+            }
+            if (existing != null) {
+                retire(existing);
+            }
+            created.references = 1;
+            indexes.put(path, created);
+            if (reaperTask == null) {
+                reaperTask = reaper.scheduleWithFixedDelay(() -> evictIdle(IDLE_TIMEOUT_MS),
+                        REAPER_PERIOD_MS, REAPER_PERIOD_MS, TimeUnit.MILLISECONDS);
+            }
+            return created;
+        }
+    }
+
+    synchronized void release(ArchiveIndex index) {
+        index.references--;
+        index.lastReleased = System.currentTimeMillis();
+        if (index.references == 0 && index.retired) {
+            index.close();
+        }
+    }
+
+    /**
+     * Closes every unused index that has been idle for at least {@code idleMillis}.
+     */
+    synchronized void evictIdle(long idleMillis) {
+        long now = System.currentTimeMillis();
+        Iterator<ArchiveIndex> it = indexes.values().iterator();
+        while (it.hasNext()) {
+            ArchiveIndex index = it.next();
+            if (index.references == 0 && now - index.lastReleased >= idleMillis) {
+                it.remove();
+                index.close();
+            }
+        }
+        if (indexes.isEmpty() && reaperTask != null) {
+            reaperTask.cancel(false);
+            reaperTask = null;
+        }
+    }
+
+    private void retire(ArchiveIndex index) {
+        index.retired = true;
+        if (index.references == 0) {
+            index.close();
+        }
+    }
+}
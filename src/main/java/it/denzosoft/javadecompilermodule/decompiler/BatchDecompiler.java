@@ -0,0 +1,319 @@
+package it.denzosoft.javadecompilermodule.decompiler;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Decompiles many classes in parallel on a fork/join pool.
+ * Each result is handed to a {@link Sink} as soon as it is ready, so memory
+ * use is bounded by the classes in flight rather than by the batch size.
+ */
+public final class BatchDecompiler {
+
+    /**
+     * Receives decompiled sources. Called concurrently from worker threads.
+     */
+    public interface Sink {
+
+        void write(String internalName, String source) throws IOException;
+    }
+
+    /**
+     * Observes progress. Called concurrently from worker threads.
+     */
+    public interface Listener {
+
+        /**
+         * @param internalName the class that was processed
+         * @param nanos time spent in the engine
+         * @param failure the failure, or null on success
+         */
+        void classDone(String internalName, long nanos, Throwable failure);
+    }
+
+    private final DecompilerEngine engine;
+    private final DecompilerEngine.ClassProvider classProvider;
+    private final boolean preserveLineNumbers;
+    private final int parallelism;
+    private long timeoutMillis;
+    private volatile boolean cancelled;
+
+    /**
+     * @param engine the engine to use; must tolerate concurrent calls
+     * @param classProvider provider for the classes and their dependencies; must be thread-safe
+     * @param preserveLineNumbers whether to align output to original line numbers
+     * @param parallelism number of worker threads
+     */
+    public BatchDecompiler(DecompilerEngine engine, DecompilerEngine.ClassProvider classProvider,
+            boolean preserveLineNumbers, int parallelism) {
+        this.engine = engine;
+        this.classProvider = classProvider;
+        this.preserveLineNumbers = preserveLineNumbers;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Selects the classes worth decompiling on their own: nested classes are
+     * emitted as part of their outer class, and multi-release variants and
+     * module descriptors are skipped.
+     */
+    public static List<String> topLevelClasses(Collection<String> internalNames) {
+        List<String> result = new ArrayList<>();
+        for (String name : internalNames) {
+            String simpleName = name.substring(name.lastIndexOf('/') + 1);
+            if (simpleName.indexOf('$') < 0 && !name.startsWith("META-INF/")
+                    && !"module-info".equals(simpleName)) {
+                result.add(name);
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Limits the time spent on each class; a class exceeding it is reported as failed
+     * with a {@link java.util.concurrent.TimeoutException}. 0, the default, means no limit.
+     */
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = Math.max(0, timeoutMillis);
+    }
+
+    /**
+     * Requests the running batch to stop; classes already in flight complete.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Decompiles the given classes, blocking until all are done or the batch is cancelled.
+     * Failed classes are reported to the listener and not written to the sink.
+     */
+    public Result run(List<String> internalNames, Sink sink, Listener listener) throws IOException {
+        Result result = new Result(engine);
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new Batch(internalNames, 0, internalNames.size(), sink, listener, result));
+        } catch (UncheckedSinkException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdownNow();
+        }
+        result.elapsedNanos = System.nanoTime() - start;
+        result.cancelled = cancelled;
+        return result;
+    }
+
+    private void decompileOne(String internalName, Sink sink, Listener listener, Result result) {
+        long start = System.nanoTime();
+        String source;
+        try {
+            byte[] bytecode = classProvider.load(internalName);
+            source = decompile(internalName, bytecode);
+        } catch (Throwable e) {
+            // One engine crash (StackOverflowError, AssertionError, ...) must not end the batch;
+            // a VM that is out of memory or broken should
+            if (e instanceof VirtualMachineError && !(e instanceof StackOverflowError)) {
+                throw (VirtualMachineError) e;
+            }
+            long nanos = System.nanoTime() - start;
+            result.addFailure(internalName, e);
+            if (listener != null) {
+                listener.classDone(internalName, nanos, e);
+            }
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        try {
+            sink.write(internalName, source);
+        } catch (IOException e) {
+            // Output errors abort the whole batch
+            cancelled = true;
+            throw new UncheckedSinkException(e);
+        }
+        result.succeeded.incrementAndGet();
+        if (listener != null) {
+            listener.classDone(internalName, nanos, null);
+        }
+    }
+
+    private String decompile(final String internalName, final byte[] bytecode) throws Exception {
+        final DecompilerMetrics metrics = DecompilerMetrics.getDefault();
+        if (timeoutMillis == 0) {
+            return metrics.decompile(engine, internalName, bytecode, classProvider).format(preserveLineNumbers);
+        }
+        DecompilationJob<DecompiledSource> job = DecompilationJob.start(internalName,
+                () -> metrics.decompile(engine, internalName, bytecode, classProvider));
+        try {
+            return job.get(timeoutMillis).format(preserveLineNumbers);
+        } catch (TimeoutException e) {
+            metrics.recordTimeout(engine.getId());
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Splits the class list in halves until a slice is small enough to run directly.
+     */
+    private final class Batch extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private static final int LEAF_SIZE = 4;
+
+        private final List<String> names;
+        private final int from;
+        private final int to;
+        private final transient Sink sink;
+        private final transient Listener listener;
+        private final transient Result result;
+
+        Batch(List<String> names, int from, int to, Sink sink, Listener listener, Result result) {
+            this.names = names;
+            this.from = from;
+            this.to = to;
+            this.sink = sink;
+            this.listener = listener;
+            this.result = result;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF_SIZE) {
+                for (int i = from; i < to && !cancelled; i++) {
+                    decompileOne(names.get(i), sink, listener, result);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Batch(names, from, middle, sink, listener, result),
+                    new Batch(names, middle, to, sink, listener, result));
+        }
+    }
+
+    /**
+     * Creates a sink writing each source as a ".java" entry of a ZIP/JAR stream.
+     * The stream is not closed by the sink.
+     */
+    public static Sink zipSink(final ZipOutputStream out) {
+        return (internalName, source) -> {
+            byte[] data = source.getBytes(StandardCharsets.UTF_8);
+            synchronized (out) {
+                out.putNextEntry(new ZipEntry(internalName + ".java"));
+                out.write(data);
+                out.closeEntry();
+            }
+        };
+    }
+
+    /**
+     * Creates a sink writing each source as a ".java" file below a directory.
+     */
+    public static Sink directorySink(final File directory) {
+        return (internalName, source) -> {
+            File target = new File(directory, internalName.replace('/', File.separatorChar) + ".java");
+            File parent = target.getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+                throw new IOException("Cannot create directory: " + parent);
+            }
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                    Files.newOutputStream(target.toPath()), StandardCharsets.UTF_8))) {
+                writer.write(source);
+            }
+        };
+    }
+
+    /**
+     * Outcome of a batch run.
+     */
+    public static final class Result {
+
+        private final DecompilerEngine engine;
+        private final AtomicInteger succeeded = new AtomicInteger();
+        private final Map<String, String> failures = new TreeMap<>();
+        private long elapsedNanos;
+        private boolean cancelled;
+
+        Result(DecompilerEngine engine) {
+            this.engine = engine;
+        }
+
+        private synchronized void addFailure(String internalName, Throwable e) {
+            failures.put(internalName, e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+
+        public DecompilerEngine getEngine() {
+            return engine;
+        }
+
+        public int getSucceeded() {
+            return succeeded.get();
+        }
+
+        /**
+         * Returns the failed classes with a short error description each.
+         */
+        public synchronized Map<String, String> getFailures() {
+            return Collections.unmodifiableMap(new TreeMap<>(failures));
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Returns the throughput in processed (successful or failed) classes per second.
+         */
+        public double getClassesPerSecond() {
+            int processed;
+            synchronized (this) {
+                processed = succeeded.get() + failures.size();
+            }
+            return elapsedNanos == 0 ? 0 : processed * 1e9 / elapsedNanos;
+        }
+    }
+
+    private static final class UncheckedSinkException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        UncheckedSinkException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
@@ -5,7 +5,6 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 import org.benf.cfr.reader.api.CfrDriver;
 import org.benf.cfr.reader.api.ClassFileSource;
 import org.benf.cfr.reader.api.OutputSinkFactory;
@@ -34,10 +33,15 @@ public class CfrEngine implements DecompilerEngine {
     }
 
     @Override
-    public String decompile(String className, byte[] bytecode, ClassProvider classProvider, boolean preserveLineNumbers) throws Exception {
+    public String getVersion() {
+        return "0.152"; // keep in sync with pom.xml
+    }
+
+    @Override
+    public DecompiledSource decompile(String className, byte[] bytecode, ClassProvider classProvider) throws Exception {
         final StringBuilder result = new StringBuilder();
         final Map<String, byte[]> classCache = new HashMap<>();
-        final Map<Integer, Integer> lineMapping = new TreeMap<>(); // decompiled line -> original line
+        final LineAligner lineAligner = new LineAligner(); // decompiled line -> original line
         classCache.put(className + ".class", bytecode);
 
         // Custom class file source
@@ -77,11 +81,11 @@ public class CfrEngine implements DecompilerEngine {
             }
         };
 
-        // Output sink to capture decompiled source and optionally line mappings
+        // Output sink to capture decompiled source and line mappings
         OutputSinkFactory sinkFactory = new OutputSinkFactory() {
             @Override
             public List<SinkClass> getSupportedSinks(SinkType sinkType, Collection<SinkClass> collection) {
-                if (preserveLineNumbers && sinkType == SinkType.LINENUMBER) {
+                if (sinkType == SinkType.LINENUMBER) {
                     return Collections.singletonList(SinkClass.LINE_NUMBER_MAPPING);
                 }
                 return Collections.singletonList(SinkClass.STRING);
@@ -90,13 +94,15 @@ public class CfrEngine implements DecompilerEngine {
             @Override
             @SuppressWarnings("unchecked")
             public <T> Sink<T> getSink(SinkType sinkType, SinkClass sinkClass) {
-                if (preserveLineNumbers && sinkType == SinkType.LINENUMBER && sinkClass == SinkClass.LINE_NUMBER_MAPPING) {
+                if (sinkType == SinkType.LINENUMBER && sinkClass == SinkClass.LINE_NUMBER_MAPPING) {
                     return sinkable -> {
                         if (sinkable instanceof SinkReturns.LineNumberMapping) {
                             SinkReturns.LineNumberMapping mapping = (SinkReturns.LineNumberMapping) sinkable;
                             Map<Integer, Integer> classMap = mapping.getClassFileMappings();
                             if (classMap != null) {
-                                lineMapping.putAll(classMap);
+                                for (Map.Entry<Integer, Integer> entry : classMap.entrySet()) {
+                                    lineAligner.add(entry.getKey(), entry.getValue());
+                                }
                             }
                         }
                     };
@@ -124,61 +130,9 @@ public class CfrEngine implements DecompilerEngine {
 
         driver.analyse(Collections.singletonList(className + ".class"));
 
-        String decompiledCode = result.toString();
-
-        // Apply line alignment if needed, then add footer with decompiler info
-        StringBuilder finalResult = new StringBuilder();
-
-        if (preserveLineNumbers && !lineMapping.isEmpty()) {
-            finalResult.append(alignToLineNumbers(decompiledCode, lineMapping, 1));
-        } else {
-            finalResult.append(decompiledCode);
-        }
-
-        // Add decompiler info at the end
-        finalResult.append("\n\n// Decompiled with CFR\n");
-
-        return finalResult.toString();
-    }
-
-    /**
-     * Aligns decompiled code to original line numbers by inserting blank lines.
-     * This ensures stack traces match the decompiled source.
-     *
-     * @param code the decompiled source code
-     * @param lineMapping map from decompiled line number to original line number
-     * @param startingLine the line number where the code starts (after header)
-     * @return the aligned source code
-     */
-    private String alignToLineNumbers(String code, Map<Integer, Integer> lineMapping, int startingLine) {
-        if (lineMapping.isEmpty()) {
-            return code;
-        }
-
-        String[] lines = code.split("\n", -1);
-        StringBuilder result = new StringBuilder();
-
-        int currentOutputLine = startingLine;
-
-        for (int i = 0; i < lines.length; i++) {
-            int decompiledLine = i + 1;
-            Integer originalLine = lineMapping.get(decompiledLine);
-
-            // If we have a mapping, pad to reach the original line number
-            if (originalLine != null && originalLine > currentOutputLine) {
-                while (currentOutputLine < originalLine) {
-                    result.append("\n");
-                    currentOutputLine++;
-                }
-            }
-
-            result.append(lines[i]);
-            if (i < lines.length - 1) {
-                result.append("\n");
-            }
-            currentOutputLine++;
-        }
+        // Add decompiler info at the end, past the mapped lines
+        result.append("\n\n// Decompiled with CFR\n");
 
-        return result.toString();
+        return new DecompiledSource(result.toString(), lineAligner.toPairs());
     }
 }
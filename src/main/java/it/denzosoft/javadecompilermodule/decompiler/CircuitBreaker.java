@@ -0,0 +1,117 @@
+package it.denzosoft.javadecompilermodule.decompiler;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers engines that keep failing in a scope (an archive, or a class-file
+ * version) and skips them there for a while.
+ * <p>
+ * After {@link #FAILURE_THRESHOLD} consecutive failures or timeouts the engine
+ * is skipped in that scope for {@link #OPEN_MILLIS}. Once the pause is over a
+ * single trial run is allowed: success closes the breaker again, another
+ * failure reopens it for the same pause.
+ */
+public final class CircuitBreaker {
+
+    static final int FAILURE_THRESHOLD = 3;
+    static final long OPEN_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private static final CircuitBreaker DEFAULT = new CircuitBreaker();
+
+    private final Map<String, State> states = new ConcurrentHashMap<>();
+
+    CircuitBreaker() {
+    }
+
+    /**
+     * Returns the breaker shared by all decompilations.
+     */
+    public static CircuitBreaker getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Scope for classes inside an archive.
+     */
+    public static String archiveScope(String archivePath) {
+        return "archive:" + archivePath;
+    }
+
+    /**
+     * Scope for classes of a class-file major version.
+     */
+    public static String versionScope(int majorVersion) {
+        return "version:" + majorVersion;
+    }
+
+    /**
+     * Returns true if the engine may run in all given scopes.
+     */
+    public boolean allows(String engineId, String... scopes) {
+        long now = System.currentTimeMillis();
+        for (String scope : scopes) {
+            State state = states.get(key(engineId, scope));
+            if (state != null && !state.allows(now)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records a successful run, closing the breaker in all given scopes.
+     */
+    public void recordSuccess(String engineId, String... scopes) {
+        for (String scope : scopes) {
+            states.remove(key(engineId, scope));
+        }
+    }
+
+    /**
+     * Records a failure or timeout in all given scopes.
+     */
+    public void recordFailure(String engineId, String... scopes) {
+        long now = System.currentTimeMillis();
+        for (String scope : scopes) {
+            states.computeIfAbsent(key(engineId, scope), k -> new State()).fail(now);
+        }
+    }
+
+    /**
+     * Forgets all failures, e.g. after the engine settings changed.
+     */
+    public void reset() {
+        states.clear();
+    }
+
+    private static String key(String engineId, String scope) {
+        return engineId + '|' + scope;
+    }
+
+    private static final class State {
+
+        private int failures;
+        private long openUntil;
+
+        synchronized boolean allows(long now) {
+            if (failures < FAILURE_THRESHOLD) {
+                return true;
+            }
+            if (now < openUntil) {
+                return false;
+            }
+            // Half-open: let one run through to probe whether the engine recovered
+            openUntil = now + OPEN_MILLIS;
+            return true;
+        }
+
+        synchronized void fail(long now) {
+            failures++;
+            if (failures >= FAILURE_THRESHOLD) {
+                openUntil = now + OPEN_MILLIS;
+            }
+        }
+    }
+}
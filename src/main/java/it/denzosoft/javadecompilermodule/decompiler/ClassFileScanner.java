@@ -0,0 +1,618 @@
+package it.denzosoft.javadecompilermodule.decompiler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lightweight reader of the class-file header, constant pool and class attributes.
+ * Only offsets are recorded while scanning; names are decoded on demand.
+ * Fields and methods are skipped, not parsed; {@link OutlineEngine} walks
+ * them through the package-private accessors.
+ * <p>
+ * The constant pool entries behind the public accessors are validated while
+ * scanning, so a malformed class file fails in {@link #scan(byte[])} with an
+ * IllegalArgumentException and never later in an accessor.
+ */
+public final class ClassFileScanner {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private static final int ACC_INTERFACE = 0x0200;
+    private static final int ACC_ANNOTATION = 0x2000;
+    private static final int ACC_ENUM = 0x4000;
+    private static final int ACC_MODULE = 0x8000;
+
+    private static final String ATTR_INNER_CLASSES = "InnerClasses";
+    private static final String ATTR_NEST_HOST = "NestHost";
+    private static final String ATTR_ENCLOSING_METHOD = "EnclosingMethod";
+    private static final String ATTR_SOURCE_FILE = "SourceFile";
+    private static final String ATTR_RECORD = "Record";
+    private static final String ATTR_CODE = "Code";
+
+    private final byte[] bytes;
+    private final int majorVersion;
+    private final int[] cpOffsets; // offset of each entry's tag, 0 for unusable slots
+    private final int accessFlags;
+    private final int thisClass;
+    private final int superClass;
+    private final int[] interfaces;
+    private final int fieldCount;
+    private final int methodCount;
+    private final int fieldsOffset;
+    private final int methodsOffset;
+    private final int attributesOffset;
+    private int invokeDynamicCount;
+    // Constant pool index of "Code", found while skipping methods
+    private int codeName;
+    private int codeSize;
+    private int maxMethodCodeSize;
+    // Class attribute locations; 0 if the attribute is absent
+    private int innerClassesOffset;
+    private int nestHost;
+    private int enclosingClass;
+    private int sourceFile;
+    private boolean record;
+
+    private ClassFileScanner(byte[] bytes) {
+        this.bytes = bytes;
+        if (readInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a class file");
+        }
+        this.majorVersion = readU2(6);
+        int cpCount = readU2(8);
+        this.cpOffsets = new int[cpCount];
+        int offset = 10;
+        for (int i = 1; i < cpCount; i++) {
+            cpOffsets[i] = offset;
+            int tag = bytes[offset] & 0xFF;
+            switch (tag) {
+                case CONSTANT_UTF8:
+                    offset += 3 + readU2(offset + 1);
+                    break;
+                case CONSTANT_CLASS:
+                case CONSTANT_STRING:
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    offset += 3;
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    offset += 4;
+                    break;
+                case CONSTANT_INTEGER:
+                case CONSTANT_FLOAT:
+                case CONSTANT_FIELDREF:
+                case CONSTANT_METHODREF:
+                case CONSTANT_INTERFACE_METHODREF:
+                case CONSTANT_NAME_AND_TYPE:
+                case CONSTANT_DYNAMIC:
+                    offset += 5;
+                    break;
+                case CONSTANT_INVOKE_DYNAMIC:
+                    invokeDynamicCount++;
+                    offset += 5;
+                    break;
+                case CONSTANT_LONG:
+                case CONSTANT_DOUBLE:
+                    offset += 9;
+                    i++; // takes two slots
+                    break;
+                default:
+                    throw new IllegalArgumentException("Bad constant pool tag " + tag + " at " + offset);
+            }
+        }
+        for (int i = 1; i < cpCount; i++) {
+            if (cpOffsets[i] != 0 && (bytes[cpOffsets[i]] & 0xFF) == CONSTANT_CLASS) {
+                checkConstant(readU2(cpOffsets[i] + 1), CONSTANT_UTF8);
+            }
+        }
+        this.accessFlags = readU2(offset);
+        this.thisClass = checkConstant(readU2(offset + 2), CONSTANT_CLASS);
+        this.superClass = readU2(offset + 4);
+        if (superClass != 0) {
+            checkConstant(superClass, CONSTANT_CLASS);
+        }
+        int interfaceCount = readU2(offset + 6);
+        this.interfaces = new int[interfaceCount];
+        for (int i = 0; i < interfaceCount; i++) {
+            interfaces[i] = checkConstant(readU2(offset + 8 + i * 2), CONSTANT_CLASS);
+        }
+        offset += 8 + interfaceCount * 2;
+
+        this.fieldsOffset = offset;
+        this.fieldCount = readU2(offset);
+        offset = skipMembers(offset + 2, fieldCount, false);
+        this.methodsOffset = offset;
+        this.methodCount = readU2(offset);
+        offset = skipMembers(offset + 2, methodCount, true);
+        this.attributesOffset = offset;
+        int attributeCount = readU2(offset);
+        offset += 2;
+        for (int i = 0; i < attributeCount; i++) {
+            int name = readU2(offset);
+            int data = offset + 6;
+            if (utf8Equals(name, ATTR_INNER_CLASSES)) {
+                innerClassesOffset = data;
+            } else if (utf8Equals(name, ATTR_NEST_HOST)) {
+                nestHost = checkConstant(readU2(data), CONSTANT_CLASS);
+            } else if (utf8Equals(name, ATTR_ENCLOSING_METHOD)) {
+                enclosingClass = checkConstant(readU2(data), CONSTANT_CLASS);
+            } else if (utf8Equals(name, ATTR_SOURCE_FILE)) {
+                sourceFile = checkConstant(readU2(data), CONSTANT_UTF8);
+            } else if (utf8Equals(name, ATTR_RECORD)) {
+                record = true;
+            }
+            offset = data + readInt(offset + 2);
+        }
+        if (offset > bytes.length) {
+            throw new IllegalArgumentException("Truncated class file");
+        }
+        if (innerClassesOffset != 0) {
+            int count = readU2(innerClassesOffset);
+            for (int i = 0, entry = innerClassesOffset + 2; i < count; i++, entry += 8) {
+                checkConstant(readU2(entry), CONSTANT_CLASS);
+                if (readU2(entry + 2) != 0) {
+                    checkConstant(readU2(entry + 2), CONSTANT_CLASS);
+                }
+                if (readU2(entry + 4) != 0) {
+                    checkConstant(readU2(entry + 4), CONSTANT_UTF8);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the index if it refers to a constant pool entry of the given kind.
+     *
+     * @throws IllegalArgumentException otherwise
+     */
+    private int checkConstant(int index, int tag) {
+        if (index <= 0 || index >= cpOffsets.length || cpOffsets[index] == 0
+                || (bytes[cpOffsets[index]] & 0xFF) != tag) {
+            throw new IllegalArgumentException("Bad constant pool index " + index);
+        }
+        return index;
+    }
+
+    /**
+     * Skips a field or method table and returns the offset after it.
+     * For methods the bytecode lengths are summed up on the way.
+     */
+    private int skipMembers(int offset, int count, boolean methods) {
+        for (int i = 0; i < count; i++) {
+            int attributeCount = readU2(offset + 6);
+            offset += 8;
+            for (int j = 0; j < attributeCount; j++) {
+                if (methods && isCodeAttribute(readU2(offset))) {
+                    // Code: max_stack, max_locals, code_length
+                    int length = readInt(offset + 10);
+                    codeSize += length;
+                    maxMethodCodeSize = Math.max(maxMethodCodeSize, length);
+                }
+                offset += 6 + readInt(offset + 2);
+            }
+        }
+        return offset;
+    }
+
+    boolean isCodeAttribute(int name) {
+        if (codeName == 0 && utf8Equals(name, ATTR_CODE)) {
+            codeName = name;
+        }
+        return name == codeName;
+    }
+
+    /**
+     * Scans the given class bytes.
+     *
+     * @throws IllegalArgumentException if the bytes are not a valid class file
+     */
+    public static ClassFileScanner scan(byte[] bytes) {
+        try {
+            return new ClassFileScanner(bytes);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated class file", e);
+        }
+    }
+
+    /**
+     * Reads just the major version from the class header, or returns -1 if the
+     * bytes are not a class file. Cheaper than a full {@link #scan(byte[])}.
+     */
+    public static int majorVersion(byte[] bytes) {
+        if (bytes.length < 8 || (((bytes[0] & 0xFF) << 24) | ((bytes[1] & 0xFF) << 16)
+                | ((bytes[2] & 0xFF) << 8) | (bytes[3] & 0xFF)) != MAGIC) {
+            return -1;
+        }
+        return ((bytes[6] & 0xFF) << 8) | (bytes[7] & 0xFF);
+    }
+
+    /**
+     * Returns the class-file major version (52 = Java 8, 61 = Java 17...).
+     */
+    public int getMajorVersion() {
+        return majorVersion;
+    }
+
+    /**
+     * Returns the class access flags as stored in the class file.
+     */
+    public int getAccessFlags() {
+        return accessFlags;
+    }
+
+    /**
+     * Returns the Java keyword for the kind of type: "class", "interface",
+     * "enum", "@interface" or "module".
+     */
+    public String getKind() {
+        if ((accessFlags & ACC_MODULE) != 0) {
+            return "module";
+        }
+        if ((accessFlags & ACC_ANNOTATION) != 0) {
+            return "@interface";
+        }
+        if ((accessFlags & ACC_INTERFACE) != 0) {
+            return "interface";
+        }
+        return (accessFlags & ACC_ENUM) != 0 ? "enum" : "class";
+    }
+
+    /**
+     * Returns the number of fields declared by the class.
+     */
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Returns the number of methods declared by the class, including constructors and initializers.
+     */
+    public int getMethodCount() {
+        return methodCount;
+    }
+
+    /**
+     * Returns the number of invokedynamic call sites in the constant pool
+     * (lambdas, string concatenation, records' object methods).
+     */
+    public int getInvokeDynamicCount() {
+        return invokeDynamicCount;
+    }
+
+    /**
+     * Returns true if the class is a record.
+     */
+    public boolean isRecord() {
+        return record;
+    }
+
+    /**
+     * Returns the bytecode length of all methods together.
+     */
+    public int getCodeSize() {
+        return codeSize;
+    }
+
+    /**
+     * Returns the bytecode length of the longest method.
+     */
+    public int getMaxMethodCodeSize() {
+        return maxMethodCodeSize;
+    }
+
+    /**
+     * Returns the offset of the fields_count item in the class file.
+     */
+    int getFieldsOffset() {
+        return fieldsOffset;
+    }
+
+    /**
+     * Returns the offset of the methods_count item in the class file.
+     */
+    int getMethodsOffset() {
+        return methodsOffset;
+    }
+
+    /**
+     * Returns the offset of the class attributes_count item in the class file.
+     */
+    int getAttributesOffset() {
+        return attributesOffset;
+    }
+
+    /**
+     * Returns the internal name of the class, e.g. "com/example/MyClass".
+     */
+    public String getThisClass() {
+        return className(thisClass);
+    }
+
+    /**
+     * Returns the internal name of the superclass, or null for java/lang/Object and modules.
+     */
+    public String getSuperClass() {
+        return superClass == 0 ? null : className(superClass);
+    }
+
+    /**
+     * Returns the internal names of the directly implemented interfaces.
+     */
+    public List<String> getInterfaces() {
+        List<String> result = new ArrayList<>(interfaces.length);
+        for (int index : interfaces) {
+            result.add(className(index));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the SourceFile attribute, e.g. "MyClass.java", or null if absent.
+     */
+    public String getSourceFile() {
+        return sourceFile == 0 ? null : utf8(sourceFile);
+    }
+
+    /**
+     * Returns the NestHost attribute (Java 11+), i.e. the top-level class of a
+     * nested class, or null if absent.
+     */
+    public String getNestHost() {
+        return nestHost == 0 ? null : className(nestHost);
+    }
+
+    /**
+     * Returns the InnerClasses attribute: every nested class this class
+     * declares or refers to, including its own enclosing classes.
+     */
+    public List<InnerClass> getInnerClasses() {
+        if (innerClassesOffset == 0) {
+            return new ArrayList<>(0);
+        }
+        int count = readU2(innerClassesOffset);
+        List<InnerClass> result = new ArrayList<>(count);
+        for (int i = 0, offset = innerClassesOffset + 2; i < count; i++, offset += 8) {
+            int outer = readU2(offset + 2);
+            int simpleName = readU2(offset + 4);
+            result.add(new InnerClass(className(readU2(offset)),
+                    outer == 0 ? null : className(outer),
+                    simpleName == 0 ? null : utf8(simpleName),
+                    readU2(offset + 6)));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the immediately enclosing class, or null for a top-level class.
+     * Local and anonymous classes resolve through their EnclosingMethod attribute.
+     */
+    public String getOuterClass() {
+        if (enclosingClass != 0) {
+            return className(enclosingClass);
+        }
+        String self = getThisClass();
+        for (InnerClass inner : getInnerClasses()) {
+            if (inner.getName().equals(self)) {
+                return inner.getOuterName();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the outermost class of a nested class, or this class if it is top-level.
+     * Exact for Java 11+ class files (NestHost); older files follow the
+     * InnerClasses chain, which ends at the first enclosing class that has no
+     * declared outer class.
+     */
+    public String getTopLevelClass() {
+        String host = getNestHost();
+        if (host != null) {
+            return host;
+        }
+        String self = getThisClass();
+        String outer = getOuterClass();
+        if (outer == null) {
+            return self;
+        }
+        Map<String, String> outers = new HashMap<>();
+        for (InnerClass inner : getInnerClasses()) {
+            if (inner.getOuterName() != null) {
+                outers.put(inner.getName(), inner.getOuterName());
+            }
+        }
+        String current = outer;
+        for (int depth = 0; depth < outers.size() && outers.containsKey(current); depth++) {
+            current = outers.get(current);
+        }
+        return current;
+    }
+
+    /**
+     * Returns the internal names of all classes referenced from the constant pool,
+     * array types reduced to their element type, excluding this class.
+     */
+    public Set<String> getReferencedClasses() {
+        Set<String> result = new LinkedHashSet<>();
+        for (int i = 1; i < cpOffsets.length; i++) {
+            int offset = cpOffsets[i];
+            if (offset != 0 && i != thisClass && (bytes[offset] & 0xFF) == CONSTANT_CLASS) {
+                String name = elementType(utf8(readU2(offset + 1)));
+                if (name != null) {
+                    result.add(name);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Strips array dimensions; returns null for primitive arrays.
+     */
+    private static String elementType(String name) {
+        if (name.isEmpty() || name.charAt(0) != '[') {
+            return name;
+        }
+        int dims = 0;
+        while (dims < name.length() && name.charAt(dims) == '[') {
+            dims++;
+        }
+        if (dims < name.length() && name.charAt(dims) == 'L' && name.endsWith(";")) {
+            return name.substring(dims + 1, name.length() - 1);
+        }
+        return null;
+    }
+
+    /**
+     * Compares a CONSTANT_Utf8 entry with an ASCII string without decoding it.
+     */
+    boolean utf8Equals(int index, String ascii) {
+        int offset = cpOffsets[checkConstant(index, CONSTANT_UTF8)];
+        int length = readU2(offset + 1);
+        if (length != ascii.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (bytes[offset + 3 + i] != ascii.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    String className(int classIndex) {
+        return utf8(readU2(cpOffsets[checkConstant(classIndex, CONSTANT_CLASS)] + 1));
+    }
+
+    /**
+     * Decodes a CONSTANT_Utf8 entry (modified UTF-8).
+     */
+    String utf8(int index) {
+        int offset = cpOffsets[checkConstant(index, CONSTANT_UTF8)];
+        int length = readU2(offset + 1);
+        int start = offset + 3;
+        int end = start + length;
+        char[] chars = new char[length];
+        int count = 0;
+        int i = start;
+        while (i < end) {
+            int b = bytes[i] & 0xFF;
+            if (b < 0x80) {
+                chars[count++] = (char) b;
+                i++;
+            } else if ((b & 0xE0) == 0xC0) {
+                chars[count++] = (char) (((b & 0x1F) << 6) | (bytes[i + 1] & 0x3F));
+                i += 2;
+            } else {
+                chars[count++] = (char) (((b & 0x0F) << 12) | ((bytes[i + 1] & 0x3F) << 6) | (bytes[i + 2] & 0x3F));
+                i += 3;
+            }
+        }
+        return new String(chars, 0, count);
+    }
+
+    /**
+     * One entry of the InnerClasses attribute.
+     */
+    public static final class InnerClass {
+
+        private final String name;
+        private final String outerName;
+        private final String simpleName;
+        private final int accessFlags;
+
+        InnerClass(String name, String outerName, String simpleName, int accessFlags) {
+            this.name = name;
+            this.outerName = outerName;
+            this.simpleName = simpleName;
+            this.accessFlags = accessFlags;
+        }
+
+        /**
+         * Returns the internal name of the nested class, e.g. "com/example/Outer$Inner".
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the internal name of the declaring class, or null for local and anonymous classes.
+         */
+        public String getOuterName() {
+            return outerName;
+        }
+
+        /**
+         * Returns the simple source name, or null for anonymous classes.
+         */
+        public String getSimpleName() {
+            return simpleName;
+        }
+
+        public int getAccessFlags() {
+            return accessFlags;
+        }
+    }
+
+    /**
+     * Returns the value of a CONSTANT_Integer, Float, Long, Double or String
+     * entry, as found in ConstantValue and annotation attributes.
+     */
+    Object constant(int index) {
+        if (index <= 0 || index >= cpOffsets.length || cpOffsets[index] == 0) {
+            throw new IllegalArgumentException("Bad constant pool index " + index);
+        }
+        int offset = cpOffsets[index];
+        switch (bytes[offset] & 0xFF) {
+            case CONSTANT_INTEGER:
+                return readInt(offset + 1);
+            case CONSTANT_FLOAT:
+                return Float.intBitsToFloat(readInt(offset + 1));
+            case CONSTANT_LONG:
+                return readLong(offset + 1);
+            case CONSTANT_DOUBLE:
+                return Double.longBitsToDouble(readLong(offset + 1));
+            case CONSTANT_STRING:
+                return utf8(readU2(offset + 1));
+            case CONSTANT_UTF8:
+                return utf8(index);
+            default:
+                throw new IllegalArgumentException("Not a constant value: " + index);
+        }
+    }
+
+    int readU2(int offset) {
+        return ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+    }
+
+    int readInt(int offset) {
+        return (readU2(offset) << 16) | readU2(offset + 2);
+    }
+
+    private long readLong(int offset) {
+        return ((long) readInt(offset) << 32) | (readInt(offset + 4) & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,95 @@
+package it.denzosoft.javadecompilermodule.decompiler;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One decompilation running on its own worker thread, so it can be abandoned.
+ * <p>
+ * Engines do not check for interruption, so a cancelled or timed-out job
+ * gets its thread interrupted and is left to finish on its own daemon
+ * thread, at the lowest priority. Engines must not return pooled state from
+ * an abandoned run to their pools (see {@link #isAbandoned()}): it was
+ * cut off at an arbitrary point, or is still in use.
+ */
+public final class DecompilationJob<T> {
+
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+    private static final ThreadLocal<DecompilationJob<?>> CURRENT = new ThreadLocal<>();
+
+    private final FutureTask<T> task;
+    private final Thread thread;
+    private volatile boolean abandoned;
+
+    private DecompilationJob(String name, Callable<T> callable) {
+        this.task = new FutureTask<>(callable);
+        this.thread = new Thread(() -> {
+            CURRENT.set(this);
+            task.run();
+        }, "JavaDecompiler worker " + COUNTER.incrementAndGet() + ": " + name);
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Starts a job.
+     *
+     * @param name a short description used in the worker thread name
+     * @param callable the decompilation to run
+     */
+    public static <T> DecompilationJob<T> start(String name, Callable<T> callable) {
+        DecompilationJob<T> job = new DecompilationJob<>(name, callable);
+        job.thread.start();
+        return job;
+    }
+
+    /**
+     * Returns true if the calling thread runs a job that was cancelled or
+     * timed out. Engines check it before putting an instance back into a pool.
+     */
+    public static boolean isAbandoned() {
+        DecompilationJob<?> job = CURRENT.get();
+        return job != null && job.abandoned;
+    }
+
+    /**
+     * Waits for the result. The job is cancelled if the time budget runs out
+     * or the waiting thread is interrupted.
+     *
+     * @param timeoutMillis time budget, or 0 to wait without limit
+     * @return the result of the decompilation
+     * @throws TimeoutException if the budget ran out
+     * @throws java.util.concurrent.CancellationException if the job was cancelled
+     * @throws ExecutionException if the engine failed
+     * @throws InterruptedException if the waiting thread was interrupted
+     */
+    public T get(long timeoutMillis) throws InterruptedException, ExecutionException, TimeoutException {
+        try {
+            return timeoutMillis > 0 ? task.get(timeoutMillis, TimeUnit.MILLISECONDS) : task.get();
+        } catch (TimeoutException | InterruptedException e) {
+            cancel();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns true if the job completed, failed or was cancelled.
+     */
+    public boolean isDone() {
+        return task.isDone();
+    }
+
+    /**
+     * Abandons the job. Waiters get a CancellationException.
+     */
+    public void cancel() {
+        abandoned = true;
+        if (task.cancel(true)) {
+            // The engine runs on until it is done; keep it out of the way meanwhile
+            thread.setPriority(Thread.MIN_PRIORITY);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package it.denzosoft.javadecompilermodule.decompiler;
+
+/**
+ * Engine output before line alignment: the text as the engine wrote it and,
+ * for engines that report one, the original line of each decompiled line.
+ * <p>
+ * The source caches keep this form, so the aligned and the compact view of
+ * a class are both a cheap transform of the same engine run.
+ */
+public final class DecompiledSource {
+
+    private static final int[] NO_MAPPING = new int[0];
+
+    private final String text;
+    private final int[] lineMapping;
+
+    /**
+     * @param text the unaligned source
+     * @param lineMapping pairs {@code [decompiled1, original1, decompiled2, original2, ...]}
+     *        of 1-based line numbers; not copied, so it must not be changed afterwards
+     */
+    public DecompiledSource(String text, int[] lineMapping) {
+        this.text = text;
+        this.lineMapping = lineMapping != null ? lineMapping : NO_MAPPING;
+    }
+
+    /**
+     * Creates a source without line mapping, e.g. an error message.
+     */
+    public DecompiledSource(String text) {
+        this(text, NO_MAPPING);
+    }
+
+    /**
+     * Returns the text as the engine wrote it.
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Returns the line mapping in the flat form taken by the constructor;
+     * empty if the engine reports none. The array must not be changed.
+     */
+    public int[] getLineMapping() {
+        return lineMapping;
+    }
+
+    /**
+     * Returns the source as shown: aligned to the original line numbers, or as
+     * the engine wrote it.
+     */
+    public String format(boolean preserveLineNumbers) {
+        if (!preserveLineNumbers || lineMapping.length == 0) {
+            return text;
+        }
+        LineAligner aligner = new LineAligner();
+        aligner.addPairs(lineMapping);
+        return aligner.align(text);
+    }
+
+    /**
+     * Returns this source with lines added at the end, where they leave the
+     * mapping intact.
+     */
+    public DecompiledSource append(String lines) {
+        StringBuilder result = new StringBuilder(text.length() + lines.length() + 1).append(text);
+        if (result.length() > 0 && result.charAt(result.length() - 1) != '\n') {
+            result.append('\n');
+        }
+        return new DecompiledSource(result.append(lines).toString(), lineMapping);
+    }
+
+    /**
+     * Returns the approximate size in chars, for cache budgets.
+     */
+    public int size() {
+        return text.length() + lineMapping.length * 2;
+    }
+}
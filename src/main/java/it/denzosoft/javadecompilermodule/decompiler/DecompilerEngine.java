@@ -22,16 +22,23 @@ public interface DecompilerEngine {
     String getDescription();
 
     /**
-     * Decompiles bytecode to Java source code.
+     * Returns the version of the underlying decompilation library.
+     * Used to invalidate cached output when the library is upgraded.
+     */
+    String getVersion();
+
+    /**
+     * Decompiles bytecode to Java source code. The source is returned
+     * unaligned, with the line mapping if the engine reports one; see
+     * {@link DecompiledSource#format(boolean)}.
      *
      * @param className the internal class name (e.g., "com/example/MyClass")
      * @param bytecode the class bytecode
      * @param classProvider provider for loading related classes
-     * @param preserveLineNumbers whether to align output to original line numbers
-     * @return the decompiled Java source code
+     * @return the decompiled Java source code and its line mapping
      * @throws Exception if decompilation fails
      */
-    String decompile(String className, byte[] bytecode, ClassProvider classProvider, boolean preserveLineNumbers) throws Exception;
+    DecompiledSource decompile(String className, byte[] bytecode, ClassProvider classProvider) throws Exception;
 
     /**
      * Provider interface for loading class bytecode.
@@ -46,5 +53,14 @@ public interface DecompilerEngine {
          * Loads class bytecode.
          */
         byte[] load(String internalName) throws Exception;
+
+        /**
+         * Returns an id that stays the same for as long as this provider serves
+         * the same classes, so engines may keep state resolved from it across
+         * calls; null (the default) if the classes may change unnoticed.
+         */
+        default String getScopeId() {
+            return null;
+        }
     }
 }
@@ -0,0 +1,469 @@
+package it.denzosoft.javadecompilermodule.decompiler;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters of what decompiling costs: per-engine runs, failures, timeouts
+ * and latency percentiles, bytecode throughput, dependency loads per
+ * request and cache hit ratios.
+ * <p>
+ * Recording is lock-free and allocation-free; {@link #getSnapshot()} reads
+ * a consistent-enough copy. The default instance is registered with the
+ * platform MBean server on first use.
+ */
+public final class DecompilerMetrics implements DecompilerMetricsMXBean {
+
+    public static final String OBJECT_NAME = "it.denzosoft.javadecompilermodule:type=DecompilerMetrics";
+
+    private static final Logger LOG = Logger.getLogger(DecompilerMetrics.class.getName());
+
+    private static DecompilerMetrics defaultMetrics;
+
+    private final Map<String, EngineStats> engines = new ConcurrentHashMap<>();
+    private final Map<String, CacheStats> caches = new ConcurrentHashMap<>();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder dependencyLoads = new LongAdder();
+    private final LongAccumulator maxDependencyLoads = new LongAccumulator(Math::max, 0);
+    private volatile long resetAt = System.nanoTime();
+
+    /**
+     * Returns the module-wide metrics.
+     */
+    public static synchronized DecompilerMetrics getDefault() {
+        if (defaultMetrics == null) {
+            defaultMetrics = new DecompilerMetrics();
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(defaultMetrics, new ObjectName(OBJECT_NAME));
+            } catch (JMException | SecurityException e) {
+                LOG.log(Level.FINE, "Cannot register " + OBJECT_NAME, e);
+            }
+        }
+        return defaultMetrics;
+    }
+
+    /**
+     * Runs an engine and records its latency and outcome.
+     */
+    public DecompiledSource decompile(DecompilerEngine engine, String internalName, byte[] bytecode,
+            DecompilerEngine.ClassProvider classProvider) throws Exception {
+        EngineStats stats = engineStats(engine.getId());
+        long started = System.nanoTime();
+        try {
+            DecompiledSource source = engine.decompile(internalName, bytecode, classProvider);
+            stats.latency.record(System.nanoTime() - started);
+            stats.bytecodeBytes.add(bytecode.length);
+            stats.successes.increment();
+            return source;
+        } catch (Throwable e) {
+            // Including errors: StackOverflowError and AssertionError are the typical engine crashes
+            stats.latency.record(System.nanoTime() - started);
+            stats.failures.increment();
+            throw e;
+        }
+    }
+
+    /**
+     * Records that a run of the engine was abandoned after its time limit.
+     */
+    public void recordTimeout(String engineId) {
+        engineStats(engineId).timeouts.increment();
+    }
+
+    /**
+     * Records that a run of the engine was cancelled by the user.
+     */
+    public void recordCancellation(String engineId) {
+        engineStats(engineId).cancellations.increment();
+    }
+
+    /**
+     * Records how many dependency classes one decompilation had to read.
+     */
+    public void recordDependencyLoads(int loads) {
+        requests.increment();
+        dependencyLoads.add(loads);
+        maxDependencyLoads.accumulate(loads);
+    }
+
+    /**
+     * Records lookups in a cache.
+     *
+     * @param cache a short cache name, e.g. "memory"
+     */
+    public void recordCache(String cache, int hits, int misses) {
+        CacheStats stats = caches.get(cache);
+        if (stats == null) {
+            stats = caches.computeIfAbsent(cache, k -> new CacheStats());
+        }
+        stats.hits.add(hits);
+        stats.misses.add(misses);
+    }
+
+    /**
+     * Records one lookup in a cache.
+     */
+    public void recordCache(String cache, boolean hit) {
+        recordCache(cache, hit ? 1 : 0, hit ? 0 : 1);
+    }
+
+    private EngineStats engineStats(String engineId) {
+        EngineStats stats = engines.get(engineId);
+        if (stats == null) {
+            stats = engines.computeIfAbsent(engineId, k -> new EngineStats());
+        }
+        return stats;
+    }
+
+    @Override
+    public Snapshot getSnapshot() {
+        double seconds = secondsSinceReset();
+        List<EngineSnapshot> engineSnapshots = new ArrayList<>();
+        for (Map.Entry<String, EngineStats> entry : new TreeMap<>(engines).entrySet()) {
+            engineSnapshots.add(entry.getValue().snapshot(entry.getKey()));
+        }
+        List<CacheSnapshot> cacheSnapshots = new ArrayList<>();
+        for (Map.Entry<String, CacheStats> entry : new TreeMap<>(caches).entrySet()) {
+            cacheSnapshots.add(new CacheSnapshot(entry.getKey(), entry.getValue().hits.sum(), entry.getValue().misses.sum()));
+        }
+        return new Snapshot(seconds, requests.sum(), dependencyLoads.sum(), maxDependencyLoads.get(),
+                engineSnapshots, cacheSnapshots);
+    }
+
+    @Override
+    public long getDecompilations() {
+        long total = 0;
+        for (EngineStats stats : engines.values()) {
+            total += stats.successes.sum() + stats.failures.sum();
+        }
+        return total;
+    }
+
+    @Override
+    public long getFailures() {
+        long total = 0;
+        for (EngineStats stats : engines.values()) {
+            total += stats.failures.sum();
+        }
+        return total;
+    }
+
+    @Override
+    public long getTimeouts() {
+        long total = 0;
+        for (EngineStats stats : engines.values()) {
+            total += stats.timeouts.sum();
+        }
+        return total;
+    }
+
+    @Override
+    public double getBytecodeBytesPerSecond() {
+        long bytes = 0;
+        for (EngineStats stats : engines.values()) {
+            bytes += stats.bytecodeBytes.sum();
+        }
+        return bytes / secondsSinceReset();
+    }
+
+    @Override
+    public double getDependencyLoadsPerRequest() {
+        long count = requests.sum();
+        return count == 0 ? 0 : (double) dependencyLoads.sum() / count;
+    }
+
+    @Override
+    public void reset() {
+        engines.clear();
+        caches.clear();
+        requests.reset();
+        dependencyLoads.reset();
+        maxDependencyLoads.reset();
+        resetAt = System.nanoTime();
+    }
+
+    private double secondsSinceReset() {
+        return Math.max(1e-3, (System.nanoTime() - resetAt) / 1e9);
+    }
+
+    private static final class EngineStats {
+
+        final LongAdder successes = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final LongAdder timeouts = new LongAdder();
+        final LongAdder cancellations = new LongAdder();
+        final LongAdder bytecodeBytes = new LongAdder();
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        EngineSnapshot snapshot(String engineId) {
+            long busyNanos = latency.sumNanos.sum();
+            long bytes = bytecodeBytes.sum();
+            return new EngineSnapshot(engineId, successes.sum(), failures.sum(), timeouts.sum(), cancellations.sum(),
+                    bytes, busyNanos == 0 ? 0 : bytes / (busyNanos / 1e9),
+                    latency.meanMillis(), latency.percentileMillis(0.50), latency.percentileMillis(0.95),
+                    latency.percentileMillis(0.99), latency.maxNanos.get() / 1e6);
+        }
+    }
+
+    private static final class CacheStats {
+
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+    }
+
+    /**
+     * Latencies in buckets of four per power of two microseconds, so
+     * percentiles are accurate to about 25% with a fixed, small footprint.
+     */
+    private static final class LatencyHistogram {
+
+        private static final int SUB_BUCKETS = 4;
+        private static final int MAX_EXPONENT = 40;
+
+        final AtomicLongArray counts = new AtomicLongArray((MAX_EXPONENT + 1) * SUB_BUCKETS);
+        final LongAdder sumNanos = new LongAdder();
+        final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        void record(long nanos) {
+            long micros = Math.max(1, TimeUnit.NANOSECONDS.toMicros(nanos));
+            int exponent = Math.min(MAX_EXPONENT, 63 - Long.numberOfLeadingZeros(micros));
+            int sub = exponent >= 2 ? (int) ((micros >>> (exponent - 2)) & (SUB_BUCKETS - 1)) : 0;
+            counts.incrementAndGet(exponent * SUB_BUCKETS + sub);
+            sumNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        double meanMillis() {
+            long count = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                count += counts.get(i);
+            }
+            return count == 0 ? 0 : sumNanos.sum() / 1e6 / count;
+        }
+
+        /**
+         * Returns the upper bound of the bucket holding the percentile, capped at the maximum.
+         */
+        double percentileMillis(double percentile) {
+            long[] snapshot = new long[counts.length()];
+            long total = 0;
+            for (int i = 0; i < snapshot.length; i++) {
+                snapshot[i] = counts.get(i);
+                total += snapshot[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(percentile * total);
+            long seen = 0;
+            for (int i = 0; i < snapshot.length; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    return Math.min(upperBoundMicros(i) / 1000.0, maxNanos.get() / 1e6);
+                }
+            }
+            return maxNanos.get() / 1e6;
+        }
+
+        private static long upperBoundMicros(int bucket) {
+            int exponent = bucket / SUB_BUCKETS;
+            if (exponent < 2) {
+                return 2L << exponent;
+            }
+            int sub = bucket % SUB_BUCKETS;
+            return (long) (SUB_BUCKETS + sub + 1) << (exponent - 2);
+        }
+    }
+
+    /**
+     * Point-in-time copy of all metrics.
+     */
+    public static final class Snapshot {
+
+        private final double uptimeSeconds;
+        private final long requests;
+        private final long dependencyLoads;
+        private final long maxDependencyLoads;
+        private final List<EngineSnapshot> engines;
+        private final List<CacheSnapshot> caches;
+
+        Snapshot(double uptimeSeconds, long requests, long dependencyLoads, long maxDependencyLoads,
+                List<EngineSnapshot> engines, List<CacheSnapshot> caches) {
+            this.uptimeSeconds = uptimeSeconds;
+            this.requests = requests;
+            this.dependencyLoads = dependencyLoads;
+            this.maxDependencyLoads = maxDependencyLoads;
+            this.engines = engines;
+            this.caches = caches;
+        }
+
+        /** Seconds since the metrics were created or reset. */
+        public double getUptimeSeconds() {
+            return uptimeSeconds;
+        }
+
+        /** Decompilations that loaded dependencies through the IDE. */
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getDependencyLoads() {
+            return dependencyLoads;
+        }
+
+        public double getDependencyLoadsPerRequest() {
+            return requests == 0 ? 0 : (double) dependencyLoads / requests;
+        }
+
+        public long getMaxDependencyLoads() {
+            return maxDependencyLoads;
+        }
+
+        /** Bytecode decompiled per second of uptime, over all engines. */
+        public double getBytecodeBytesPerSecond() {
+            long bytes = 0;
+            for (EngineSnapshot engine : engines) {
+                bytes += engine.getBytecodeBytes();
+            }
+            return bytes / uptimeSeconds;
+        }
+
+        public List<EngineSnapshot> getEngines() {
+            return engines;
+        }
+
+        public List<CacheSnapshot> getCaches() {
+            return caches;
+        }
+    }
+
+    /**
+     * Statistics of one engine. Latencies cover successful and failed runs.
+     */
+    public static final class EngineSnapshot {
+
+        private final String engine;
+        private final long successes;
+        private final long failures;
+        private final long timeouts;
+        private final long cancellations;
+        private final long bytecodeBytes;
+        private final double bytecodeBytesPerSecond;
+        private final double meanMillis;
+        private final double p50Millis;
+        private final double p95Millis;
+        private final double p99Millis;
+        private final double maxMillis;
+
+        EngineSnapshot(String engine, long successes, long failures, long timeouts, long cancellations,
+                long bytecodeBytes, double bytecodeBytesPerSecond,
+                double meanMillis, double p50Millis, double p95Millis, double p99Millis, double maxMillis) {
+            this.engine = engine;
+            this.successes = successes;
+            this.failures = failures;
+            this.timeouts = timeouts;
+            this.cancellations = cancellations;
+            this.bytecodeBytes = bytecodeBytes;
+            this.bytecodeBytesPerSecond = bytecodeBytesPerSecond;
+            this.meanMillis = meanMillis;
+            this.p50Millis = p50Millis;
+            this.p95Millis = p95Millis;
+            this.p99Millis = p99Millis;
+            this.maxMillis = maxMillis;
+        }
+
+        public String getEngine() {
+            return engine;
+        }
+
+        public long getSuccesses() {
+            return successes;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        public long getCancellations() {
+            return cancellations;
+        }
+
+        public long getBytecodeBytes() {
+            return bytecodeBytes;
+        }
+
+        /** Bytecode decompiled per second the engine was busy. */
+        public double getBytecodeBytesPerSecond() {
+            return bytecodeBytesPerSecond;
+        }
+
+        public double getMeanMillis() {
+            return meanMillis;
+        }
+
+        public double getP50Millis() {
+            return p50Millis;
+        }
+
+        public double getP95Millis() {
+            return p95Millis;
+        }
+
+        public double getP99Millis() {
+            return p99Millis;
+        }
+
+        public double getMaxMillis() {
+            return maxMillis;
+        }
+    }
+
+    /**
+     * Lookups in one cache.
+     */
+    public static final class CacheSnapshot {
+
+        private final String cache;
+        private final long hits;
+        private final long misses;
+
+        CacheSnapshot(String cache, long hits, long misses) {
+            this.cache = cache;
+            this.hits = hits;
+            this.misses = misses;
+        }
+
+        public String getCache() {
+            return cache;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public double getHitRatio() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+    }
+}
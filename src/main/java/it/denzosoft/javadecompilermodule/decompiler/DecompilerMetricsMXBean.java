@@ -0,0 +1,43 @@
+package it.denzosoft.javadecompilermodule.decompiler;
+
+/**
+ * Management interface of {@link DecompilerMetrics}, registered as
+ * {@value DecompilerMetrics#OBJECT_NAME} so it can be watched in JConsole or VisualVM.
+ */
+public interface DecompilerMetricsMXBean {
+
+    /**
+     * Returns all counters, per-engine latencies and cache statistics.
+     */
+    DecompilerMetrics.Snapshot getSnapshot();
+
+    /**
+     * Returns the number of engine runs, successful or not.
+     */
+    long getDecompilations();
+
+    /**
+     * Returns the number of engine runs that threw.
+     */
+    long getFailures();
+
+    /**
+     * Returns the number of engine runs abandoned after their time limit.
+     */
+    long getTimeouts();
+
+    /**
+     * Returns the bytecode decompiled per second since the last reset.
+     */
+    double getBytecodeBytesPerSecond();
+
+    /**
+     * Returns the average number of dependency classes read per decompilation.
+     */
+    double getDependencyLoadsPerRequest();
+
+    /**
+     * Starts all counters from zero.
+     */
+    void reset();
+}
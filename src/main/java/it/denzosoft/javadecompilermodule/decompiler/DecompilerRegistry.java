@@ -5,6 +5,8 @@ import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.prefs.PreferenceChangeEvent;
+import java.util.prefs.PreferenceChangeListener;
 import java.util.prefs.Preferences;
 import org.openide.util.NbPreferences;
 
@@ -13,10 +15,32 @@ import org.openide.util.NbPreferences;
  */
 public final class DecompilerRegistry {
 
+    /**
+     * Selection id letting {@link EngineSelector} pick the engine per class.
+     */
+    public static final String AUTO_ENGINE_ID = "auto";
+
     private static final String PREF_SELECTED_DECOMPILER = "selectedDecompiler";
     private static final String PREF_PRESERVE_LINE_NUMBERS = "preserveLineNumbers";
+    private static final String PREF_DISK_CACHE_ENABLED = "diskCacheEnabled";
+    private static final String PREF_DISK_CACHE_SIZE_MB = "diskCacheSizeMb";
+    private static final String PREF_PREFETCH_ENABLED = "prefetchEnabled";
+    private static final String PREF_TIMEOUT_SECONDS = "timeoutSeconds";
+    private static final String PREF_ENGINE_TIMEOUT_PREFIX = "timeoutSeconds.";
+    private static final String PREF_RACE_ENABLED = "raceEnabled";
+    private static final String PREF_RACE_ENGINES = "raceEngines";
+    private static final String PREF_FALLBACK_ENABLED = "fallbackEnabled";
+    private static final String PREF_FALLBACK_CHAIN = "fallbackChain";
     private static final String DEFAULT_DECOMPILER = "cfr";
     private static final boolean DEFAULT_PRESERVE_LINE_NUMBERS = true;
+    private static final boolean DEFAULT_DISK_CACHE_ENABLED = true;
+    private static final int DEFAULT_DISK_CACHE_SIZE_MB = 64;
+    private static final boolean DEFAULT_PREFETCH_ENABLED = true;
+    private static final int DEFAULT_TIMEOUT_SECONDS = 30;
+    private static final boolean DEFAULT_RACE_ENABLED = false;
+    private static final String DEFAULT_RACE_ENGINES = "cfr,vineflower,procyon";
+    private static final boolean DEFAULT_FALLBACK_ENABLED = true;
+    private static final String DEFAULT_FALLBACK_CHAIN = "cfr,vineflower,procyon,jd-core";
 
     private static final Map<String, DecompilerEngine> ENGINES = new LinkedHashMap<>();
 
@@ -26,6 +50,7 @@ public final class DecompilerRegistry {
         register(new JdCoreEngine());
         register(new ProcyonEngine());
         register(new VineflowerEngine());
+        register(new OutlineEngine());
     }
 
     private DecompilerRegistry() {
@@ -50,7 +75,9 @@ public final class DecompilerRegistry {
     }
 
     /**
-     * Returns the currently selected decompiler engine.
+     * Returns the currently selected decompiler engine. With "Auto" selected
+     * this is the default engine, for callers that need a single engine for
+     * all classes; see {@link #isAutoSelected()}.
      */
     public static DecompilerEngine getSelectedEngine() {
         String selectedId = getPreferences().get(PREF_SELECTED_DECOMPILER, DEFAULT_DECOMPILER);
@@ -65,13 +92,20 @@ public final class DecompilerRegistry {
      * Sets the selected decompiler engine.
      */
     public static void setSelectedEngine(String id) {
-        if (ENGINES.containsKey(id)) {
+        if (ENGINES.containsKey(id) || AUTO_ENGINE_ID.equals(id)) {
             getPreferences().put(PREF_SELECTED_DECOMPILER, id);
         }
     }
 
     /**
-     * Returns the ID of the currently selected decompiler.
+     * Returns true if the engine is picked per class.
+     */
+    public static boolean isAutoSelected() {
+        return AUTO_ENGINE_ID.equals(getSelectedEngineId());
+    }
+
+    /**
+     * Returns the ID of the currently selected decompiler, or {@link #AUTO_ENGINE_ID}.
      */
     public static String getSelectedEngineId() {
         return getPreferences().get(PREF_SELECTED_DECOMPILER, DEFAULT_DECOMPILER);
@@ -91,6 +125,190 @@ public final class DecompilerRegistry {
         getPreferences().putBoolean(PREF_PRESERVE_LINE_NUMBERS, preserve);
     }
 
+    /**
+     * Returns whether decompiled sources are cached on disk across IDE sessions.
+     */
+    public static boolean isDiskCacheEnabled() {
+        return getPreferences().getBoolean(PREF_DISK_CACHE_ENABLED, DEFAULT_DISK_CACHE_ENABLED);
+    }
+
+    /**
+     * Sets whether decompiled sources are cached on disk across IDE sessions.
+     */
+    public static void setDiskCacheEnabled(boolean enabled) {
+        getPreferences().putBoolean(PREF_DISK_CACHE_ENABLED, enabled);
+    }
+
+    /**
+     * Returns the maximum size of the disk cache in megabytes.
+     */
+    public static int getDiskCacheSizeMb() {
+        return getPreferences().getInt(PREF_DISK_CACHE_SIZE_MB, DEFAULT_DISK_CACHE_SIZE_MB);
+    }
+
+    /**
+     * Sets the maximum size of the disk cache in megabytes.
+     */
+    public static void setDiskCacheSizeMb(int sizeMb) {
+        getPreferences().putInt(PREF_DISK_CACHE_SIZE_MB, Math.max(1, sizeMb));
+    }
+
+    /**
+     * Returns whether related classes are decompiled speculatively in the background.
+     */
+    public static boolean isPrefetchEnabled() {
+        return getPreferences().getBoolean(PREF_PREFETCH_ENABLED, DEFAULT_PREFETCH_ENABLED);
+    }
+
+    /**
+     * Sets whether related classes are decompiled speculatively in the background.
+     */
+    public static void setPrefetchEnabled(boolean enabled) {
+        getPreferences().putBoolean(PREF_PREFETCH_ENABLED, enabled);
+    }
+
+    /**
+     * Returns the default time limit for decompiling one class, in seconds (0 = no limit).
+     */
+    public static int getTimeoutSeconds() {
+        return getPreferences().getInt(PREF_TIMEOUT_SECONDS, DEFAULT_TIMEOUT_SECONDS);
+    }
+
+    /**
+     * Sets the default time limit for decompiling one class, in seconds (0 = no limit).
+     */
+    public static void setTimeoutSeconds(int seconds) {
+        getPreferences().putInt(PREF_TIMEOUT_SECONDS, Math.max(0, seconds));
+    }
+
+    /**
+     * Returns the time limit of an engine in seconds, falling back to the default limit.
+     */
+    public static int getTimeoutSeconds(String engineId) {
+        return getPreferences().getInt(PREF_ENGINE_TIMEOUT_PREFIX + engineId, getTimeoutSeconds());
+    }
+
+    /**
+     * Sets the time limit of an engine in seconds; a negative value restores the default limit.
+     */
+    public static void setTimeoutSeconds(String engineId, int seconds) {
+        if (seconds < 0) {
+            getPreferences().remove(PREF_ENGINE_TIMEOUT_PREFIX + engineId);
+        } else {
+            getPreferences().putInt(PREF_ENGINE_TIMEOUT_PREFIX + engineId, seconds);
+        }
+    }
+
+    /**
+     * Returns whether several engines race on each class and the first good result is shown.
+     */
+    public static boolean isRaceEnabled() {
+        return getPreferences().getBoolean(PREF_RACE_ENABLED, DEFAULT_RACE_ENABLED);
+    }
+
+    /**
+     * Sets whether several engines race on each class and the first good result is shown.
+     */
+    public static void setRaceEnabled(boolean enabled) {
+        getPreferences().putBoolean(PREF_RACE_ENABLED, enabled);
+    }
+
+    /**
+     * Returns the engines taking part in a race, in preference order.
+     * Unknown IDs in the stored setting are skipped.
+     */
+    public static List<DecompilerEngine> getRaceEngines() {
+        return parseEngines(getPreferences().get(PREF_RACE_ENGINES, DEFAULT_RACE_ENGINES));
+    }
+
+    /**
+     * Sets the engines taking part in a race, in preference order.
+     */
+    public static void setRaceEngines(List<String> ids) {
+        getPreferences().put(PREF_RACE_ENGINES, formatEngines(ids));
+    }
+
+    /**
+     * Returns whether a failing or timed-out engine is retried with the next engine of the fallback chain.
+     */
+    public static boolean isFallbackEnabled() {
+        return getPreferences().getBoolean(PREF_FALLBACK_ENABLED, DEFAULT_FALLBACK_ENABLED);
+    }
+
+    /**
+     * Sets whether a failing or timed-out engine is retried with the next engine of the fallback chain.
+     */
+    public static void setFallbackEnabled(boolean enabled) {
+        getPreferences().putBoolean(PREF_FALLBACK_ENABLED, enabled);
+    }
+
+    /**
+     * Returns the engines to try in order: the given primary engine first, then
+     * the other engines of the fallback chain. Only the primary engine is
+     * returned if fallback is disabled.
+     */
+    public static List<DecompilerEngine> getFallbackChain(DecompilerEngine primary) {
+        List<DecompilerEngine> result = new ArrayList<>();
+        result.add(primary);
+        if (isFallbackEnabled()) {
+            for (DecompilerEngine engine : parseEngines(getPreferences().get(PREF_FALLBACK_CHAIN, DEFAULT_FALLBACK_CHAIN))) {
+                if (engine != primary) {
+                    result.add(engine);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sets the order in which engines are tried after the selected one fails.
+     */
+    public static void setFallbackChain(List<String> ids) {
+        getPreferences().put(PREF_FALLBACK_CHAIN, formatEngines(ids));
+    }
+
+    /**
+     * Resolves a comma separated list of engine IDs, skipping unknown and repeated IDs.
+     */
+    private static List<DecompilerEngine> parseEngines(String ids) {
+        List<DecompilerEngine> result = new ArrayList<>();
+        for (String id : ids.split(",")) {
+            DecompilerEngine engine = ENGINES.get(id.trim());
+            if (engine != null && !result.contains(engine)) {
+                result.add(engine);
+            }
+        }
+        return result;
+    }
+
+    private static String formatEngines(List<String> ids) {
+        StringBuilder value = new StringBuilder();
+        for (String id : ids) {
+            if (ENGINES.containsKey(id)) {
+                if (value.length() > 0) {
+                    value.append(',');
+                }
+                value.append(id);
+            }
+        }
+        return value.toString();
+    }
+
+    /**
+     * Registers a listener notified whenever any decompiler setting changes.
+     */
+    public static void addSettingsListener(PreferenceChangeListener listener) {
+        getPreferences().addPreferenceChangeListener(listener);
+    }
+
+    /**
+     * Returns true if a settings change only affects how cached output is laid
+     * out, i.e. the line-number alignment, so no engine has to run again.
+     */
+    public static boolean isLayoutChange(PreferenceChangeEvent evt) {
+        return PREF_PRESERVE_LINE_NUMBERS.equals(evt.getKey());
+    }
+
     private static Preferences getPreferences() {
         return NbPreferences.forModule(DecompilerRegistry.class);
     }
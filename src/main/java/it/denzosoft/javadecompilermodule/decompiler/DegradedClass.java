@@ -0,0 +1,204 @@
+package it.denzosoft.javadecompilermodule.decompiler;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A class file with its longest method bodies cut out, for classes too big
+ * to hand to an engine as they are.
+ * <p>
+ * Generated parsers, lexer tables and protobuf messages can have methods
+ * close to the 64 KB bytecode limit; every engine spends minutes and a lot
+ * of memory on those. Here each method body above a threshold is replaced
+ * with {@code throw null}, and the threshold is lowered until the bytecode
+ * left for the engine fits {@link #MAX_CLASS_CODE_BYTES}. Signatures,
+ * fields, annotations and the short methods stay intact, which is what the
+ * class is usually opened for.
+ */
+public final class DegradedClass {
+
+    /** Methods longer than this make a class oversized. */
+    public static final int MAX_METHOD_BYTES = 16 * 1024;
+    /** Classes with more method bytecode than this are oversized. */
+    public static final int MAX_CLASS_CODE_BYTES = 256 * 1024;
+
+    private static final int MIN_METHOD_BYTES = 1024;
+    private static final int MAX_LISTED_METHODS = 20;
+
+    // Code attribute of a stub: max_stack, max_locals, code_length, aconst_null, athrow,
+    // exception_table_length, attributes_count
+    private static final int STUB_CODE_LENGTH = 2 + 2 + 4 + 2 + 2 + 2;
+
+    private final byte[] bytecode;
+    private final int threshold;
+    private final int codeSize;
+    private final int maxMethodCodeSize;
+    private final List<String> strippedMethods;
+
+    private DegradedClass(byte[] bytecode, int threshold, ClassFileScanner classInfo, List<String> strippedMethods) {
+        this.bytecode = bytecode;
+        this.threshold = threshold;
+        this.codeSize = classInfo.getCodeSize();
+        this.maxMethodCodeSize = classInfo.getMaxMethodCodeSize();
+        this.strippedMethods = Collections.unmodifiableList(strippedMethods);
+    }
+
+    /**
+     * Returns true if the class is too big to decompile in full within the IDE.
+     */
+    public static boolean isOversized(ClassFileScanner classInfo) {
+        return classInfo.getMaxMethodCodeSize() > MAX_METHOD_BYTES || classInfo.getCodeSize() > MAX_CLASS_CODE_BYTES;
+    }
+
+    /**
+     * Cuts the longest method bodies out of an oversized class.
+     *
+     * @param bytecode the class file
+     * @param classInfo the scanned class file
+     */
+    public static DegradedClass strip(byte[] bytecode, ClassFileScanner classInfo) {
+        int[] lengths = codeLengths(bytecode, classInfo);
+        int threshold = MAX_METHOD_BYTES;
+        while (threshold > MIN_METHOD_BYTES && keptCode(lengths, threshold) > MAX_CLASS_CODE_BYTES) {
+            threshold /= 2;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytecode.length);
+        List<String> stripped = new ArrayList<>();
+        int offset = classInfo.getMethodsOffset();
+        out.write(bytecode, 0, offset + 2);
+        offset += 2;
+        for (int i = 0; i < classInfo.getMethodCount(); i++) {
+            int member = offset;
+            int attributeCount = readU2(bytecode, offset + 6);
+            out.write(bytecode, offset, 8);
+            offset += 8;
+            for (int j = 0; j < attributeCount; j++) {
+                int name = readU2(bytecode, offset);
+                int length = readInt(bytecode, offset + 2);
+                if (classInfo.isCodeAttribute(name) && readInt(bytecode, offset + 10) > threshold) {
+                    writeStub(out, bytecode, offset);
+                    stripped.add(classInfo.utf8(readU2(bytecode, member + 2)) + classInfo.utf8(readU2(bytecode, member + 4)));
+                } else {
+                    out.write(bytecode, offset, 6 + length);
+                }
+                offset += 6 + length;
+            }
+        }
+        // Class attributes
+        out.write(bytecode, offset, bytecode.length - offset);
+        return new DegradedClass(out.toByteArray(), threshold, classInfo, stripped);
+    }
+
+    /**
+     * Returns the class file to give to the engine.
+     */
+    public byte[] getBytecode() {
+        return bytecode;
+    }
+
+    /**
+     * Returns the bytecode length above which method bodies were left out.
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Returns the name and descriptor of each method whose body was left out.
+     */
+    public List<String> getStrippedMethods() {
+        return strippedMethods;
+    }
+
+    /**
+     * Appends a note on what was left out to the decompiled source. The note
+     * goes at the end so aligned line numbers stay where they are.
+     */
+    public DecompiledSource annotate(DecompiledSource source) {
+        StringBuilder text = new StringBuilder(256);
+        text.append(String.format(Locale.ROOT,
+                "// Oversized class (%d KB of bytecode, longest method %d KB): method bodies over %d bytes\n"
+                + "// were left out and read \"throw null\" here:\n",
+                kb(codeSize), kb(maxMethodCodeSize), threshold));
+        int listed = Math.min(strippedMethods.size(), MAX_LISTED_METHODS);
+        for (int i = 0; i < listed; i++) {
+            text.append("//   ").append(strippedMethods.get(i)).append('\n');
+        }
+        if (listed < strippedMethods.size()) {
+            text.append("//   ... and ").append(strippedMethods.size() - listed).append(" more\n");
+        }
+        return source.append(text.toString());
+    }
+
+    private static int kb(int bytes) {
+        return (bytes + 1023) / 1024;
+    }
+
+    /**
+     * Returns the bytecode length of each method, 0 for abstract and native ones.
+     */
+    private static int[] codeLengths(byte[] bytecode, ClassFileScanner classInfo) {
+        int[] lengths = new int[classInfo.getMethodCount()];
+        int offset = classInfo.getMethodsOffset() + 2;
+        for (int i = 0; i < lengths.length; i++) {
+            int attributeCount = readU2(bytecode, offset + 6);
+            offset += 8;
+            for (int j = 0; j < attributeCount; j++) {
+                if (classInfo.isCodeAttribute(readU2(bytecode, offset))) {
+                    lengths[i] = readInt(bytecode, offset + 10);
+                }
+                offset += 6 + readInt(bytecode, offset + 2);
+            }
+        }
+        return lengths;
+    }
+
+    private static long keptCode(int[] lengths, int threshold) {
+        long kept = 0;
+        for (int length : lengths) {
+            if (length <= threshold) {
+                kept += length;
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Writes a Code attribute whose body is {@code aconst_null; athrow}. The
+     * original max_locals is kept so parameters still have their slots; line
+     * numbers, local variables, stack maps and handlers go with the body.
+     */
+    private static void writeStub(ByteArrayOutputStream out, byte[] bytecode, int offset) {
+        out.write(bytecode, offset, 2); // attribute_name_index
+        writeInt(out, STUB_CODE_LENGTH);
+        writeU2(out, 1); // max_stack
+        out.write(bytecode, offset + 8, 2); // max_locals
+        writeInt(out, 2);
+        out.write(0x01); // aconst_null
+        out.write(0xBF); // athrow
+        writeU2(out, 0);
+        writeU2(out, 0);
+    }
+
+    private static int readU2(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (readU2(bytes, offset) << 16) | readU2(bytes, offset + 2);
+    }
+
+    private static void writeU2(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        writeU2(out, value >>> 16);
+        writeU2(out, value);
+    }
+}
@@ -0,0 +1,63 @@
+package it.denzosoft.javadecompilermodule.decompiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class provider backed by a class output directory (package folders below a root).
+ */
+public class DirectoryClassProvider implements DecompilerEngine.ClassProvider {
+
+    private static final String CLASS_SUFFIX = ".class";
+
+    private final File root;
+
+    public DirectoryClassProvider(File root) {
+        this.root = root;
+    }
+
+    @Override
+    public boolean canLoad(String internalName) {
+        return classFile(internalName).isFile();
+    }
+
+    @Override
+    public byte[] load(String internalName) throws Exception {
+        File file = classFile(internalName);
+        if (!file.isFile()) {
+            throw new IOException("Cannot load: " + internalName);
+        }
+        return Files.readAllBytes(file.toPath());
+    }
+
+    /**
+     * Returns the internal names of all classes below the root.
+     */
+    public List<String> getClassNames() {
+        List<String> result = new ArrayList<>();
+        collect(root, "", result);
+        return result;
+    }
+
+    private static void collect(File folder, String prefix, List<String> result) {
+        File[] children = folder.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            String name = child.getName();
+            if (child.isDirectory()) {
+                collect(child, prefix + name + '/', result);
+            } else if (name.endsWith(CLASS_SUFFIX)) {
+                result.add(prefix + name.substring(0, name.length() - CLASS_SUFFIX.length()));
+            }
+        }
+    }
+
+    private File classFile(String internalName) {
+        return new File(root, internalName.replace('/', File.separatorChar) + CLASS_SUFFIX);
+    }
+}
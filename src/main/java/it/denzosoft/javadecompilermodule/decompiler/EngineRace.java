@@ -0,0 +1,151 @@
+package it.denzosoft.javadecompilermodule.decompiler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Decompiles one class with several engines at once and keeps the first
+ * successful, non-empty result. The losing engines are cancelled.
+ */
+public final class EngineRace {
+
+    private final List<DecompilationJob<DecompiledSource>> jobs = new ArrayList<>();
+    private final BlockingQueue<Outcome> outcomes = new LinkedBlockingQueue<>();
+    private final int entrants;
+    private volatile boolean cancelled;
+
+    private EngineRace(int entrants) {
+        this.entrants = entrants;
+    }
+
+    /**
+     * Starts all engines on the same bytecode.
+     *
+     * @param engines the engines to race; the class provider must be thread-safe
+     */
+    public static EngineRace start(List<DecompilerEngine> engines, final String internalName, final byte[] bytecode,
+            final DecompilerEngine.ClassProvider classProvider) {
+        if (engines.isEmpty()) {
+            throw new IllegalArgumentException("No engines to race");
+        }
+        final EngineRace race = new EngineRace(engines.size());
+        for (final DecompilerEngine engine : engines) {
+            race.jobs.add(DecompilationJob.start(engine.getId() + " " + internalName, () -> {
+                try {
+                    DecompiledSource source = DecompilerMetrics.getDefault().decompile(engine, internalName, bytecode,
+                            classProvider);
+                    race.outcomes.offer(new Outcome(engine, source, null));
+                    return source;
+                } catch (Throwable e) {
+                    // Every engine reports exactly once, also on StackOverflowError and the like
+                    race.outcomes.offer(new Outcome(engine, null, e));
+                    throw e;
+                }
+            }));
+        }
+        return race;
+    }
+
+    /**
+     * Waits for the first good result. If every engine fails, the first
+     * failure is reported.
+     *
+     * @param timeoutMillis time budget, or 0 to wait without limit
+     * @throws TimeoutException if no engine succeeded within the budget
+     * @throws CancellationException if the race was cancelled
+     * @throws ExecutionException if all engines failed or produced no output
+     * @throws InterruptedException if the waiting thread was interrupted
+     */
+    public Winner get(long timeoutMillis) throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        Throwable firstFailure = null;
+        int finished = 0;
+        try {
+            while (finished < entrants) {
+                Outcome outcome;
+                if (timeoutMillis > 0) {
+                    outcome = outcomes.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (outcome == null) {
+                        throw new TimeoutException();
+                    }
+                } else {
+                    outcome = outcomes.take();
+                }
+                if (outcome == Outcome.CANCELLED || cancelled) {
+                    throw new CancellationException();
+                }
+                finished++;
+                if (outcome.failure == null && outcome.source != null && !outcome.source.getText().trim().isEmpty()) {
+                    cancel();
+                    return new Winner(outcome.engine, outcome.source);
+                }
+                if (firstFailure == null) {
+                    firstFailure = outcome.failure != null ? outcome.failure
+                            : new IllegalStateException(outcome.engine.getDisplayName() + " produced no output");
+                }
+            }
+            throw new ExecutionException(firstFailure);
+        } catch (TimeoutException | InterruptedException e) {
+            cancel();
+            throw e;
+        }
+    }
+
+    /**
+     * Cancels all engines still running. Waiters get a CancellationException
+     * unless a winner was already chosen.
+     */
+    public void cancel() {
+        if (cancelled) {
+            return;
+        }
+        cancelled = true;
+        for (DecompilationJob<DecompiledSource> job : jobs) {
+            job.cancel();
+        }
+        outcomes.offer(Outcome.CANCELLED);
+    }
+
+    /**
+     * The engine that finished first and its output.
+     */
+    public static final class Winner {
+
+        private final DecompilerEngine engine;
+        private final DecompiledSource source;
+
+        Winner(DecompilerEngine engine, DecompiledSource source) {
+            this.engine = engine;
+            this.source = source;
+        }
+
+        public DecompilerEngine getEngine() {
+            return engine;
+        }
+
+        public DecompiledSource getSource() {
+            return source;
+        }
+    }
+
+    private static final class Outcome {
+
+        static final Outcome CANCELLED = new Outcome(null, null, null);
+
+        final DecompilerEngine engine;
+        final DecompiledSource source;
+        final Throwable failure;
+
+        Outcome(DecompilerEngine engine, DecompiledSource source, Throwable failure) {
+            this.engine = engine;
+            this.source = source;
+            this.failure = failure;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package it.denzosoft.javadecompilermodule.decompiler;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Picks the engine for one class when "Auto" is selected.
+ * <p>
+ * Classes are sorted into a few profiles from cheap class-file features
+ * (version, invokedynamic sites, records, method sizes). Each profile starts
+ * with a fixed engine preference; once engines have been observed on a
+ * profile, the one with the lowest expected time to a usable result wins,
+ * i.e. the smoothed time per KB of bytecode divided by the smoothed success
+ * rate. Now and then an engine without enough observations gets a turn, so
+ * the statistics do not freeze on the first engine that worked.
+ * <p>
+ * A class keeps the engine it got for the rest of the session, so reopening
+ * it hits the source caches instead of trying yet another engine.
+ */
+public final class EngineSelector {
+
+    /**
+     * Kind of class, as far as engine behaviour goes.
+     */
+    public enum Profile {
+        /** Pre-Java 8 style code: no invokedynamic, no records. */
+        LEGACY("jd-core", "cfr", "procyon", "vineflower"),
+        /** Lambdas, string concatenation via indy, records, newer class files. */
+        MODERN("cfr", "vineflower", "procyon", "jd-core"),
+        /** Very long methods, typically generated code; some engines take minutes on these. */
+        HUGE("cfr", "vineflower", "jd-core", "procyon");
+
+        private final String[] preference;
+
+        Profile(String... preference) {
+            this.preference = preference;
+        }
+    }
+
+    private static final int HUGE_METHOD_BYTES = 8 * 1024;
+    private static final int HUGE_CLASS_BYTES = 64 * 1024;
+    private static final int JAVA_11 = 55;
+    private static final int MIN_SAMPLES = 3;
+    private static final int EXPLORE_EVERY = 16;
+    private static final double LATENCY_WEIGHT = 0.2;
+    private static final double FAILURE_WEIGHT = 0.1;
+    private static final double MAX_FAILURE_RATE = 0.95;
+    private static final int MAX_CHOICES = 4096;
+
+    private static final EngineSelector DEFAULT = new EngineSelector();
+
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+    private final AtomicInteger[] decisions = new AtomicInteger[Profile.values().length];
+    // Bytecode hash -> engine id chosen for it
+    private final Map<String, String> choices = new LinkedHashMap<String, String>(64, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_CHOICES;
+        }
+    };
+
+    EngineSelector() {
+        for (int i = 0; i < decisions.length; i++) {
+            decisions[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * Returns the module-wide selector. Its statistics live for the IDE session.
+     */
+    public static EngineSelector getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Sorts a class into a profile.
+     */
+    public static Profile profile(ClassFileScanner classInfo) {
+        if (classInfo.getMaxMethodCodeSize() >= HUGE_METHOD_BYTES || classInfo.getCodeSize() >= HUGE_CLASS_BYTES) {
+            return Profile.HUGE;
+        }
+        if (classInfo.getInvokeDynamicCount() > 0 || classInfo.isRecord() || classInfo.getMajorVersion() >= JAVA_11) {
+            return Profile.MODERN;
+        }
+        return Profile.LEGACY;
+    }
+
+    /**
+     * Picks the engine expected to produce a result soonest for the class,
+     * or the engine picked before for the same bytecode.
+     *
+     * @param bytecodeHash identifies the class file contents
+     * @param classInfo the class to decompile
+     * @param candidates the engines to choose from, not empty
+     */
+    public DecompilerEngine choose(String bytecodeHash, ClassFileScanner classInfo, List<DecompilerEngine> candidates) {
+        synchronized (choices) {
+            String previous = choices.get(bytecodeHash);
+            for (DecompilerEngine engine : candidates) {
+                if (engine.getId().equals(previous)) {
+                    return engine;
+                }
+            }
+        }
+        DecompilerEngine chosen = choose(classInfo, candidates);
+        synchronized (choices) {
+            choices.put(bytecodeHash, chosen.getId());
+        }
+        return chosen;
+    }
+
+    private DecompilerEngine choose(ClassFileScanner classInfo, List<DecompilerEngine> candidates) {
+        Profile profile = profile(classInfo);
+        List<DecompilerEngine> ranked = new ArrayList<>(candidates.size());
+        for (String id : profile.preference) {
+            for (DecompilerEngine engine : candidates) {
+                if (engine.getId().equals(id)) {
+                    ranked.add(engine);
+                }
+            }
+        }
+        for (DecompilerEngine engine : candidates) {
+            // The outline is always fastest, but has no method bodies
+            if (!ranked.contains(engine) && !OutlineEngine.ID.equals(engine.getId())) {
+                ranked.add(engine);
+            }
+        }
+
+        DecompilerEngine best = null;
+        DecompilerEngine unexplored = null;
+        double bestCost = Double.MAX_VALUE;
+        for (DecompilerEngine engine : ranked) {
+            Stats engineStats = stats.get(key(engine.getId(), profile));
+            if (engineStats == null || engineStats.samples() < MIN_SAMPLES) {
+                if (unexplored == null) {
+                    unexplored = engine;
+                }
+                continue;
+            }
+            double cost = engineStats.expectedCost();
+            if (cost < bestCost) {
+                bestCost = cost;
+                best = engine;
+            }
+        }
+        if (best == null) {
+            // Nothing observed yet: follow the profile's preference
+            return ranked.get(0);
+        }
+        if (unexplored != null && decisions[profile.ordinal()].incrementAndGet() % EXPLORE_EVERY == 0) {
+            return unexplored;
+        }
+        return best;
+    }
+
+    /**
+     * Records the outcome of one engine run. Timeouts count as failures
+     * that took the whole time limit.
+     *
+     * @param classInfo the decompiled class
+     * @param bytecodeLength the size of its class file
+     * @param elapsedNanos how long the engine ran
+     * @param success whether it produced a result
+     */
+    public void record(String engineId, ClassFileScanner classInfo, int bytecodeLength, long elapsedNanos, boolean success) {
+        String key = key(engineId, profile(classInfo));
+        Stats engineStats = stats.get(key);
+        if (engineStats == null) {
+            engineStats = stats.computeIfAbsent(key, k -> new Stats());
+        }
+        engineStats.add(elapsedNanos / 1e6 / Math.max(1.0, bytecodeLength / 1024.0), success);
+    }
+
+    private static String key(String engineId, Profile profile) {
+        return engineId + '|' + profile.name();
+    }
+
+    /**
+     * Exponentially smoothed latency and failure rate of one engine on one profile.
+     */
+    private static final class Stats {
+
+        private int samples;
+        private double millisPerKb;
+        private double failureRate;
+
+        synchronized void add(double millisPerKb, boolean success) {
+            double failed = success ? 0 : 1;
+            if (samples == 0) {
+                this.millisPerKb = millisPerKb;
+                this.failureRate = failed;
+            } else {
+                this.millisPerKb += LATENCY_WEIGHT * (millisPerKb - this.millisPerKb);
+                this.failureRate += FAILURE_WEIGHT * (failed - this.failureRate);
+            }
+            samples++;
+        }
+
+        synchronized int samples() {
+            return samples;
+        }
+
+        /**
+         * Expected time per KB until a run succeeds, if failed runs were simply repeated.
+         */
+        synchronized double expectedCost() {
+            return millisPerKb / (1 - Math.min(failureRate, MAX_FAILURE_RATE));
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package it.denzosoft.javadecompilermodule.decompiler;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import org.jd.core.v1.ClassFileToJavaSourceDecompiler;
 import org.jd.core.v1.api.loader.Loader;
 import org.jd.core.v1.api.loader.LoaderException;
@@ -8,10 +10,16 @@ import org.jd.core.v1.api.printer.Printer;
 /**
  * JD-Core decompiler engine.
  * Classic decompiler with good general support.
+ * <p>
+ * A {@link ClassFileToJavaSourceDecompiler} must not be used by two threads
+ * at once, so each call borrows one from a small pool and only returns it
+ * after completing normally in a job that was not abandoned. Calls never wait for each other; when the pool
+ * is empty a new instance is created.
  */
 public class JdCoreEngine implements DecompilerEngine {
 
-    private static final ClassFileToJavaSourceDecompiler DECOMPILER = new ClassFileToJavaSourceDecompiler();
+    private static final BlockingQueue<ClassFileToJavaSourceDecompiler> IDLE_DECOMPILERS =
+            new ArrayBlockingQueue<>(Math.max(2, Runtime.getRuntime().availableProcessors()));
 
     @Override
     public String getId() {
@@ -29,8 +37,14 @@ public class JdCoreEngine implements DecompilerEngine {
     }
 
     @Override
-    public String decompile(String className, byte[] bytecode, ClassProvider classProvider, boolean preserveLineNumbers) throws Exception {
+    public String getVersion() {
+        return "1.1.3"; // keep in sync with pom.xml
+    }
+
+    @Override
+    public DecompiledSource decompile(String className, byte[] bytecode, ClassProvider classProvider) throws Exception {
         final StringBuilder sourceBuilder = new StringBuilder();
+        final LineAligner lineAligner = new LineAligner(); // raw line -> original line
 
         Loader loader = new Loader() {
             @Override
@@ -57,20 +71,16 @@ public class JdCoreEngine implements DecompilerEngine {
         Printer printer = new Printer() {
             private int indentLevel = 0;
             private int currentLineNumber = 0;
-            private boolean realignmentEnabled = false;
             private static final String INDENT = "    ";
 
             @Override
             public void start(int maxLineNumber, int majorVersion, int minorVersion) {
                 // No header at start - will be added at end
                 currentLineNumber = 1;
-                realignmentEnabled = preserveLineNumbers && (maxLineNumber > 0);
             }
 
             @Override
             public void end() {
-                // Add decompiler info at the end
-                sourceBuilder.append("\n\n// Decompiled with JD-Core\n");
             }
 
             @Override
@@ -115,12 +125,7 @@ public class JdCoreEngine implements DecompilerEngine {
 
             @Override
             public void startLine(int lineNumber) {
-                if (realignmentEnabled && lineNumber > 0 && lineNumber > currentLineNumber) {
-                    while (currentLineNumber < lineNumber) {
-                        sourceBuilder.append("\n");
-                        currentLineNumber++;
-                    }
-                }
+                lineAligner.add(currentLineNumber, lineNumber);
                 for (int i = 0; i < indentLevel; i++) {
                     sourceBuilder.append(INDENT);
                 }
@@ -149,7 +154,17 @@ public class JdCoreEngine implements DecompilerEngine {
             }
         };
 
-        DECOMPILER.decompile(loader, printer, className);
-        return sourceBuilder.toString();
+        ClassFileToJavaSourceDecompiler decompiler = IDLE_DECOMPILERS.poll();
+        DecompilerMetrics.getDefault().recordCache("jdCorePool", decompiler != null);
+        if (decompiler == null) {
+            decompiler = new ClassFileToJavaSourceDecompiler();
+        }
+        decompiler.decompile(loader, printer, className);
+        if (!DecompilationJob.isAbandoned()) {
+            // Dropped if the pool is already full
+            IDLE_DECOMPILERS.offer(decompiler);
+        }
+        sourceBuilder.append("\n\n// Decompiled with JD-Core\n");
+        return new DecompiledSource(sourceBuilder.toString(), lineAligner.toPairs());
     }
 }
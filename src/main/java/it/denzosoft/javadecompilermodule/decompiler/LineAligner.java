@@ -0,0 +1,112 @@
+package it.denzosoft.javadecompilermodule.decompiler;
+
+import java.util.Arrays;
+
+/**
+ * Aligns decompiled code to the original line numbers by inserting blank
+ * lines, so stack traces match the displayed source.
+ * <p>
+ * Collects "decompiled line -> original line" pairs in a primitive array and
+ * applies them in a single pass over the text into a presized buffer; no
+ * per-line strings or boxed integers are created.
+ */
+public final class LineAligner {
+
+    // originals[decompiledLine] = original line, 0 where unknown
+    private int[] originals = new int[64];
+    private int maxDecompiledLine;
+    private int maxOriginalLine;
+
+    /**
+     * Records that a decompiled line (1-based) comes from an original line.
+     * Non-positive lines are ignored; a later pair for the same decompiled line wins.
+     */
+    public void add(int decompiledLine, int originalLine) {
+        if (decompiledLine <= 0 || originalLine <= 0) {
+            return;
+        }
+        if (decompiledLine >= originals.length) {
+            originals = Arrays.copyOf(originals, Math.max(decompiledLine + 1, originals.length * 2));
+        }
+        originals[decompiledLine] = originalLine;
+        maxDecompiledLine = Math.max(maxDecompiledLine, decompiledLine);
+        maxOriginalLine = Math.max(maxOriginalLine, originalLine);
+    }
+
+    /**
+     * Records pairs in the flat form {@code [decompiled1, original1, decompiled2, original2, ...]}.
+     */
+    public void addPairs(int[] pairs) {
+        if (pairs == null) {
+            return;
+        }
+        for (int i = 0; i + 1 < pairs.length; i += 2) {
+            add(pairs[i], pairs[i + 1]);
+        }
+    }
+
+    /**
+     * Returns true if no pair was recorded.
+     */
+    public boolean isEmpty() {
+        return maxDecompiledLine == 0;
+    }
+
+    /**
+     * Returns the code padded so that every mapped line lands on its original
+     * line number. Lines are never moved up, so an out-of-order mapping only
+     * stops padding for that line. Returns the code unchanged if nothing is mapped.
+     */
+    public String align(CharSequence code) {
+        if (isEmpty()) {
+            return code.toString();
+        }
+        int length = code.length();
+        // Padding never exceeds the highest original line
+        StringBuilder out = new StringBuilder(length + maxOriginalLine);
+        int outputLine = 1;
+        int decompiledLine = 1;
+        int lineStart = 0;
+        while (lineStart <= length) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && code.charAt(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int original = decompiledLine <= maxDecompiledLine ? originals[decompiledLine] : 0;
+            while (outputLine < original) {
+                out.append('\n');
+                outputLine++;
+            }
+            out.append(code, lineStart, lineEnd);
+            if (lineEnd < length) {
+                out.append('\n');
+            }
+            outputLine++;
+            decompiledLine++;
+            lineStart = lineEnd + 1;
+        }
+        return out.toString();
+    }
+
+    /**
+     * Returns the recorded pairs in the flat form taken by {@link #addPairs(int[])},
+     * ordered by decompiled line.
+     */
+    public int[] toPairs() {
+        int count = 0;
+        for (int line = 1; line <= maxDecompiledLine; line++) {
+            if (originals[line] != 0) {
+                count++;
+            }
+        }
+        int[] pairs = new int[count * 2];
+        int i = 0;
+        for (int line = 1; line <= maxDecompiledLine; line++) {
+            if (originals[line] != 0) {
+                pairs[i++] = line;
+                pairs[i++] = originals[line];
+            }
+        }
+        return pairs;
+    }
+}
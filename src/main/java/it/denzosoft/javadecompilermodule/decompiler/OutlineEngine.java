@@ -0,0 +1,1026 @@
+package it.denzosoft.javadecompilermodule.decompiler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Built-in engine that renders only the API of a class: fields, method
+ * signatures, annotations and generics, read straight from the class-file
+ * structures. Method bodies are not decompiled, which makes it fast enough
+ * (well under a millisecond per class) to also provide the content shown
+ * while a full engine is still running.
+ * <p>
+ * The line mapping places each method on the first line of its original code.
+ */
+public class OutlineEngine implements DecompilerEngine {
+
+    public static final String ID = "outline";
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_PROTECTED = 0x0004;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SYNCHRONIZED = 0x0020;
+    private static final int ACC_VOLATILE = 0x0040;
+    private static final int ACC_BRIDGE = 0x0040;
+    private static final int ACC_TRANSIENT = 0x0080;
+    private static final int ACC_VARARGS = 0x0080;
+    private static final int ACC_NATIVE = 0x0100;
+    private static final int ACC_ABSTRACT = 0x0400;
+    private static final int ACC_STRICT = 0x0800;
+    private static final int ACC_SYNTHETIC = 0x1000;
+    private static final int ACC_ENUM = 0x4000;
+
+    // Modifiers a class declaration can show; 0x0020 is ACC_SUPER there, not synchronized
+    private static final int CLASS_MODIFIERS = ACC_PUBLIC | ACC_PROTECTED | ACC_PRIVATE | ACC_ABSTRACT | ACC_STATIC | ACC_FINAL;
+    // Member classes nested deeper than this are left out
+    private static final int MAX_DEPTH = 8;
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Outline (signatures only)";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Built-in - fields, method signatures, annotations and generics without method bodies; instant";
+    }
+
+    @Override
+    public String getVersion() {
+        return "1";
+    }
+
+    @Override
+    public DecompiledSource decompile(String className, byte[] bytecode, ClassProvider classProvider) throws Exception {
+        return render(bytecode, classProvider, "// Outline: method bodies are not decompiled\n");
+    }
+
+    /**
+     * Renders the outline of a class and of its member classes.
+     *
+     * @param bytecode the class file
+     * @param classProvider loads the member classes; null to leave them out
+     * @param comment lines put above the package declaration, may be empty
+     * @throws IllegalArgumentException if the bytes are not a valid class file
+     */
+    public static DecompiledSource render(byte[] bytecode, ClassProvider classProvider, String comment) {
+        ClassFileScanner classInfo = ClassFileScanner.scan(bytecode);
+        try {
+            return new Renderer(classInfo, classProvider).render(comment);
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            // Truncated tables, constants of the wrong kind, indexes out of range
+            throw new IllegalArgumentException("Malformed class file", e);
+        }
+    }
+
+    /**
+     * State of one rendering: the text written so far and the imports it needs.
+     */
+    private static final class Renderer {
+
+        private final ClassFileScanner top;
+        private final ClassProvider classProvider;
+        private final String packageName;
+        // Simple name -> qualified name it stands for in this source
+        private final Map<String, String> simpleNames = new HashMap<>();
+        private final StringBuilder body = new StringBuilder(1024);
+        // Flat pairs of (body line, original line) for the methods
+        private int[] linePairs = new int[32];
+        private int linePairCount;
+        private int line = 1;
+
+        Renderer(ClassFileScanner top, ClassProvider classProvider) {
+            this.top = top;
+            this.classProvider = classProvider;
+            String name = top.getThisClass();
+            int slash = name.lastIndexOf('/');
+            this.packageName = slash > 0 ? name.substring(0, slash).replace('/', '.') : "";
+            typeName(name);
+        }
+
+        DecompiledSource render(String comment) {
+            if ("module".equals(top.getKind())) {
+                return new DecompiledSource(comment + "// Module descriptor\n");
+            }
+            renderClass(top, "", 0);
+
+            StringBuilder header = new StringBuilder(comment);
+            if (!packageName.isEmpty()) {
+                header.append("package ").append(packageName).append(";\n\n");
+            }
+            TreeSet<String> imports = new TreeSet<>();
+            for (String qualified : simpleNames.values()) {
+                int dot = qualified.lastIndexOf('.');
+                String pkg = dot > 0 ? qualified.substring(0, dot) : "";
+                if (!pkg.isEmpty() && !pkg.equals(packageName) && !"java.lang".equals(pkg)) {
+                    imports.add(qualified);
+                }
+            }
+            for (String qualified : imports) {
+                header.append("import ").append(qualified).append(";\n");
+            }
+            if (!imports.isEmpty()) {
+                header.append('\n');
+            }
+            int headerLines = 0;
+            for (int i = 0; i < header.length(); i++) {
+                if (header.charAt(i) == '\n') {
+                    headerLines++;
+                }
+            }
+            int[] lineMapping = Arrays.copyOf(linePairs, linePairCount);
+            for (int i = 0; i < lineMapping.length; i += 2) {
+                lineMapping[i] += headerLines;
+            }
+            return new DecompiledSource(header.append(body).toString(), lineMapping);
+        }
+
+        // --- Classes ---
+
+        private void renderClass(ClassFileScanner info, String indent, int depth) {
+            String self = info.getThisClass();
+            int flags = info.getAccessFlags();
+            String simpleName = self.substring(self.lastIndexOf('/') + 1);
+            String kind = info.isRecord() ? "record" : info.getKind();
+            boolean isInterface = "interface".equals(kind) || "@interface".equals(kind);
+            boolean hasOuterInstance = false;
+            for (ClassFileScanner.InnerClass inner : info.getInnerClasses()) {
+                if (inner.getName().equals(self) && inner.getSimpleName() != null) {
+                    // The InnerClasses entry has the source-level modifiers
+                    flags = inner.getAccessFlags();
+                    simpleName = inner.getSimpleName();
+                    hasOuterInstance = inner.getOuterName() != null && "class".equals(kind) && (flags & ACC_STATIC) == 0;
+                }
+            }
+
+            int attributes = info.getAttributesOffset();
+            String signature = null;
+            int recordOffset = 0;
+            int count = info.readU2(attributes);
+            int offset = attributes + 2;
+            for (int i = 0; i < count; i++) {
+                int name = info.readU2(offset);
+                if (info.utf8Equals(name, "Signature")) {
+                    signature = info.utf8(info.readU2(offset + 6));
+                } else if (info.utf8Equals(name, "Record")) {
+                    recordOffset = offset + 6;
+                }
+                offset += 6 + info.readInt(offset + 2);
+            }
+
+            annotations(info, attributes, indent);
+            body.append(indent);
+            int shown = flags & CLASS_MODIFIERS;
+            if (!"class".equals(kind)) {
+                // Implicit: abstract for interfaces, final for enums and records, static when nested
+                shown &= ~(ACC_ABSTRACT | ACC_FINAL | ACC_STATIC);
+            }
+            modifiers(shown, false);
+            body.append(kind).append(' ').append(simpleName);
+
+            List<String> interfaces = new ArrayList<>();
+            String superClass = null;
+            if (signature != null) {
+                Signature sig = new Signature(signature);
+                body.append(sig.typeParameters(this));
+                superClass = sig.type(this);
+                while (!sig.atEnd()) {
+                    interfaces.add(sig.type(this));
+                }
+            } else {
+                if (info.getSuperClass() != null) {
+                    superClass = typeName(info.getSuperClass());
+                }
+                if (!"@interface".equals(kind)) {
+                    for (String name : info.getInterfaces()) {
+                        interfaces.add(typeName(name));
+                    }
+                }
+            }
+            if (recordOffset != 0) {
+                recordComponents(info, recordOffset);
+            }
+            if ("class".equals(kind) && superClass != null && !"Object".equals(superClass)) {
+                body.append(" extends ").append(superClass);
+            }
+            for (int i = 0; i < interfaces.size(); i++) {
+                body.append(i > 0 ? ", " : isInterface ? " extends " : " implements ").append(interfaces.get(i));
+            }
+            body.append(" {");
+            newLine();
+
+            String memberIndent = indent + "    ";
+            boolean enumConstants = "enum".equals(kind) && enumConstants(info, memberIndent);
+            fields(info, kind, isInterface, memberIndent, enumConstants);
+            methods(info, kind, isInterface, simpleName, hasOuterInstance, memberIndent);
+            if (depth < MAX_DEPTH) {
+                memberClasses(info, memberIndent, depth);
+            }
+            body.append(indent).append('}');
+            newLine();
+        }
+
+        private void recordComponents(ClassFileScanner info, int offset) {
+            int count = info.readU2(offset);
+            offset += 2;
+            body.append('(');
+            for (int i = 0; i < count; i++) {
+                String name = info.utf8(info.readU2(offset));
+                String type = new Signature(info.utf8(info.readU2(offset + 2))).type(this);
+                int attributeCount = info.readU2(offset + 4);
+                offset += 6;
+                for (int j = 0; j < attributeCount; j++) {
+                    if (info.utf8Equals(info.readU2(offset), "Signature")) {
+                        type = new Signature(info.utf8(info.readU2(offset + 6))).type(this);
+                    }
+                    offset += 6 + info.readInt(offset + 2);
+                }
+                body.append(i > 0 ? ", " : "").append(type).append(' ').append(name);
+            }
+            body.append(')');
+        }
+
+        private void memberClasses(ClassFileScanner info, String indent, int depth) {
+            if (classProvider == null) {
+                return;
+            }
+            String self = info.getThisClass();
+            for (ClassFileScanner.InnerClass inner : info.getInnerClasses()) {
+                if (!self.equals(inner.getOuterName()) || inner.getSimpleName() == null
+                        || (inner.getAccessFlags() & ACC_SYNTHETIC) != 0) {
+                    continue;
+                }
+                ClassFileScanner nested;
+                try {
+                    if (!classProvider.canLoad(inner.getName())) {
+                        continue;
+                    }
+                    nested = ClassFileScanner.scan(classProvider.load(inner.getName()));
+                } catch (Exception e) {
+                    // An unreadable member class only leaves a gap in the outline
+                    continue;
+                }
+                newLine();
+                renderClass(nested, indent, depth + 1);
+            }
+        }
+
+        // --- Fields ---
+
+        private boolean enumConstants(ClassFileScanner info, String indent) {
+            List<String> names = new ArrayList<>();
+            int offset = info.getFieldsOffset();
+            int count = info.readU2(offset);
+            offset += 2;
+            for (int i = 0; i < count; i++) {
+                if ((info.readU2(offset) & ACC_ENUM) != 0) {
+                    names.add(info.utf8(info.readU2(offset + 2)));
+                }
+                offset = skipAttributes(info, offset + 6);
+            }
+            if (names.isEmpty()) {
+                return false;
+            }
+            body.append(indent);
+            for (int i = 0; i < names.size(); i++) {
+                body.append(i > 0 ? ", " : "").append(names.get(i));
+            }
+            body.append(';');
+            newLine();
+            return true;
+        }
+
+        private void fields(ClassFileScanner info, String kind, boolean isInterface, String indent, boolean separate) {
+            int offset = info.getFieldsOffset();
+            int count = info.readU2(offset);
+            offset += 2;
+            boolean first = true;
+            for (int i = 0; i < count; i++) {
+                int member = offset;
+                int flags = info.readU2(member);
+                int attributes = member + 6;
+                offset = skipAttributes(info, attributes);
+                if ((flags & (ACC_SYNTHETIC | ACC_ENUM)) != 0
+                        || ("record".equals(kind) && (flags & ACC_STATIC) == 0)) {
+                    continue;
+                }
+                if (first && separate) {
+                    newLine();
+                }
+                first = false;
+
+                String name = info.utf8(info.readU2(member + 2));
+                String descriptor = info.utf8(info.readU2(member + 4));
+                String type = null;
+                String value = null;
+                int attributeCount = info.readU2(attributes);
+                int attribute = attributes + 2;
+                for (int j = 0; j < attributeCount; j++) {
+                    int attributeName = info.readU2(attribute);
+                    if (info.utf8Equals(attributeName, "Signature")) {
+                        type = new Signature(info.utf8(info.readU2(attribute + 6))).type(this);
+                    } else if (info.utf8Equals(attributeName, "ConstantValue")) {
+                        value = literal(info.constant(info.readU2(attribute + 6)), descriptor.charAt(0));
+                    }
+                    attribute += 6 + info.readInt(attribute + 2);
+                }
+                if (type == null) {
+                    type = new Signature(descriptor).type(this);
+                }
+
+                annotations(info, attributes, indent);
+                body.append(indent);
+                modifiers(flags & ~(isInterface ? ACC_PUBLIC | ACC_STATIC | ACC_FINAL : 0), true);
+                body.append(type).append(' ').append(name);
+                if (value != null) {
+                    body.append(" = ").append(value);
+                }
+                body.append(';');
+                newLine();
+            }
+        }
+
+        // --- Methods ---
+
+        private void methods(ClassFileScanner info, String kind, boolean isInterface, String simpleName,
+                boolean hasOuterInstance, String indent) {
+            int offset = info.getMethodsOffset();
+            int count = info.readU2(offset);
+            offset += 2;
+            for (int i = 0; i < count; i++) {
+                int member = offset;
+                offset = skipAttributes(info, offset + 6);
+                int flags = info.readU2(member);
+                String name = info.utf8(info.readU2(member + 2));
+                String descriptor = info.utf8(info.readU2(member + 4));
+                if ((flags & (ACC_SYNTHETIC | ACC_BRIDGE)) != 0 || "<clinit>".equals(name)
+                        || ("enum".equals(kind) && isEnumMethod(name, descriptor))) {
+                    continue;
+                }
+                newLine();
+                method(info, member, flags, name, descriptor, kind, isInterface, simpleName, hasOuterInstance, indent);
+            }
+        }
+
+        private static boolean isEnumMethod(String name, String descriptor) {
+            return ("values".equals(name) && descriptor.startsWith("()["))
+                    || ("valueOf".equals(name) && descriptor.startsWith("(Ljava/lang/String;)"));
+        }
+
+        private void method(ClassFileScanner info, int member, int flags, String name, String descriptor,
+                String kind, boolean isInterface, String simpleName, boolean hasOuterInstance, String indent) {
+            String signature = null;
+            String defaultValue = null;
+            int code = 0;
+            int methodParameters = 0;
+            int[] parameterAnnotations = new int[2];
+            List<String> exceptions = new ArrayList<>();
+            int attributes = member + 6;
+            int attributeCount = info.readU2(attributes);
+            int attribute = attributes + 2;
+            for (int j = 0; j < attributeCount; j++) {
+                int attributeName = info.readU2(attribute);
+                int data = attribute + 6;
+                if (info.utf8Equals(attributeName, "Signature")) {
+                    signature = info.utf8(info.readU2(data));
+                } else if (info.utf8Equals(attributeName, "Code")) {
+                    code = data;
+                } else if (info.utf8Equals(attributeName, "Exceptions")) {
+                    int exceptionCount = info.readU2(data);
+                    for (int k = 0; k < exceptionCount; k++) {
+                        exceptions.add(typeName(info.className(info.readU2(data + 2 + k * 2))));
+                    }
+                } else if (info.utf8Equals(attributeName, "MethodParameters")) {
+                    methodParameters = data;
+                } else if (info.utf8Equals(attributeName, "RuntimeVisibleParameterAnnotations")) {
+                    parameterAnnotations[0] = data;
+                } else if (info.utf8Equals(attributeName, "RuntimeInvisibleParameterAnnotations")) {
+                    parameterAnnotations[1] = data;
+                } else if (info.utf8Equals(attributeName, "AnnotationDefault")) {
+                    StringBuilder value = new StringBuilder();
+                    elementValue(info, data, value);
+                    defaultValue = value.toString();
+                }
+                attribute = data + info.readInt(attribute + 2);
+            }
+
+            // Parameter types: the generic signature leaves out implicit parameters, the descriptor does not
+            Signature erased = new Signature(descriptor);
+            List<String> descriptorTypes = erased.parameters(this);
+            String returnType = erased.type(this);
+            String typeParameters = "";
+            List<String> types = descriptorTypes;
+            if (signature != null) {
+                Signature sig = new Signature(signature);
+                typeParameters = sig.typeParameters(this);
+                List<String> genericTypes = sig.parameters(this);
+                returnType = sig.type(this);
+                if (sig.peek() == '^') {
+                    exceptions.clear();
+                    while (sig.peek() == '^') {
+                        sig.skip();
+                        exceptions.add(sig.type(this));
+                    }
+                }
+                if (genericTypes.size() == descriptorTypes.size()) {
+                    types = genericTypes;
+                }
+            }
+            boolean constructor = "<init>".equals(name);
+            int implicit = 0;
+            if (constructor && types == descriptorTypes) {
+                if ("enum".equals(kind)) {
+                    implicit = 2; // name and ordinal
+                } else if (hasOuterInstance) {
+                    implicit = 1; // enclosing instance
+                }
+                implicit = Math.min(implicit, types.size());
+            }
+            String[] names = parameterNames(info, descriptor, (flags & ACC_STATIC) != 0, code, methodParameters,
+                    descriptorTypes.size());
+
+            annotations(info, attributes, indent);
+            int firstLine = code != 0 ? firstLine(info, code) : 0;
+            if (firstLine > 0) {
+                if (linePairCount + 2 > linePairs.length) {
+                    linePairs = Arrays.copyOf(linePairs, linePairs.length * 2);
+                }
+                linePairs[linePairCount++] = line;
+                linePairs[linePairCount++] = firstLine;
+            }
+            body.append(indent);
+            int shown = flags & ~(ACC_VARARGS | ACC_BRIDGE);
+            if (isInterface) {
+                shown &= ~(ACC_PUBLIC | ACC_ABSTRACT);
+            }
+            if ("enum".equals(kind) && constructor) {
+                shown &= ~ACC_PRIVATE;
+            }
+            modifiers(shown, false);
+            if (isInterface && (flags & (ACC_ABSTRACT | ACC_STATIC | ACC_PRIVATE)) == 0) {
+                body.append("default ");
+            }
+            if (!typeParameters.isEmpty()) {
+                body.append(typeParameters).append(' ');
+            }
+            if (constructor) {
+                body.append(simpleName);
+            } else {
+                body.append(returnType).append(' ').append(name);
+            }
+            body.append('(');
+            int shownCount = types.size() - implicit;
+            for (int p = implicit; p < types.size(); p++) {
+                if (p > implicit) {
+                    body.append(", ");
+                }
+                parameterAnnotations(info, parameterAnnotations, p - implicit, shownCount);
+                String type = types.get(p);
+                if (p == types.size() - 1 && (flags & ACC_VARARGS) != 0 && type.endsWith("[]")) {
+                    type = type.substring(0, type.length() - 2) + "...";
+                }
+                body.append(type).append(' ').append(names[p]);
+            }
+            body.append(')');
+            for (int e = 0; e < exceptions.size(); e++) {
+                body.append(e == 0 ? " throws " : ", ").append(exceptions.get(e));
+            }
+            if (defaultValue != null) {
+                body.append(" default ").append(defaultValue);
+            }
+            body.append((flags & (ACC_ABSTRACT | ACC_NATIVE)) != 0 || code == 0 ? ";" : " { /* compiled code */ }");
+            newLine();
+        }
+
+        /**
+         * Returns a name for each descriptor parameter: from MethodParameters,
+         * else from the local variable table, else argN.
+         */
+        private String[] parameterNames(ClassFileScanner info, String descriptor, boolean isStatic, int code,
+                int methodParameters, int count) {
+            String[] names = new String[count];
+            if (methodParameters != 0 && (info.readU2(methodParameters) >> 8) == count) {
+                for (int i = 0; i < count; i++) {
+                    int name = info.readU2(methodParameters + 1 + i * 4);
+                    names[i] = name != 0 ? info.utf8(name) : null;
+                }
+            } else if (code != 0) {
+                int[] slots = new int[count];
+                int slot = isStatic ? 0 : 1;
+                int p = 0;
+                for (int i = 1; p < count && descriptor.charAt(i) != ')'; i++) {
+                    char c = descriptor.charAt(i);
+                    slots[p++] = slot;
+                    slot += c == 'J' || c == 'D' ? 2 : 1;
+                    while (c == '[') {
+                        c = descriptor.charAt(++i);
+                    }
+                    if (c == 'L') {
+                        i = descriptor.indexOf(';', i);
+                    }
+                }
+                int table = codeAttribute(info, code, "LocalVariableTable");
+                if (table != 0) {
+                    int entries = info.readU2(table);
+                    for (int e = 0; e < entries; e++) {
+                        int entry = table + 2 + e * 10;
+                        if (info.readU2(entry) != 0) {
+                            continue;
+                        }
+                        int index = info.readU2(entry + 8);
+                        for (int i = 0; i < count; i++) {
+                            if (slots[i] == index) {
+                                names[i] = info.utf8(info.readU2(entry + 4));
+                            }
+                        }
+                    }
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                if (names[i] == null) {
+                    names[i] = "arg" + i;
+                }
+            }
+            return names;
+        }
+
+        private void parameterAnnotations(ClassFileScanner info, int[] attributes, int index, int shownCount) {
+            for (int data : attributes) {
+                if (data == 0) {
+                    continue;
+                }
+                int count = (info.readU2(data) >> 8);
+                // javac may leave out implicit parameters here too; count from the last one
+                int slot = index - (shownCount - count);
+                int offset = data + 1;
+                for (int p = 0; p < count; p++) {
+                    int annotations = info.readU2(offset);
+                    offset += 2;
+                    for (int a = 0; a < annotations; a++) {
+                        if (p == slot) {
+                            offset = annotation(info, offset, body);
+                            body.append(' ');
+                        } else {
+                            offset = annotation(info, offset, null);
+                        }
+                    }
+                }
+            }
+        }
+
+        private static int firstLine(ClassFileScanner info, int code) {
+            int table = codeAttribute(info, code, "LineNumberTable");
+            if (table == 0) {
+                return 0;
+            }
+            int first = 0;
+            int entries = info.readU2(table);
+            for (int e = 0; e < entries; e++) {
+                int lineNumber = info.readU2(table + 2 + e * 4 + 2);
+                if (first == 0 || lineNumber < first) {
+                    first = lineNumber;
+                }
+            }
+            return first;
+        }
+
+        /**
+         * Returns the data offset of an attribute of a Code attribute, or 0.
+         */
+        private static int codeAttribute(ClassFileScanner info, int code, String attributeName) {
+            int offset = code + 8 + info.readInt(code + 4);
+            offset += 2 + info.readU2(offset) * 8;
+            int count = info.readU2(offset);
+            offset += 2;
+            for (int i = 0; i < count; i++) {
+                if (info.utf8Equals(info.readU2(offset), attributeName)) {
+                    return offset + 6;
+                }
+                offset += 6 + info.readInt(offset + 2);
+            }
+            return 0;
+        }
+
+        // --- Annotations ---
+
+        /**
+         * Writes the annotations found in a member's or class's attributes,
+         * one per line.
+         */
+        private void annotations(ClassFileScanner info, int attributes, String indent) {
+            int count = info.readU2(attributes);
+            int offset = attributes + 2;
+            for (int i = 0; i < count; i++) {
+                int name = info.readU2(offset);
+                if (info.utf8Equals(name, "RuntimeVisibleAnnotations") || info.utf8Equals(name, "RuntimeInvisibleAnnotations")) {
+                    int annotationCount = info.readU2(offset + 6);
+                    int annotation = offset + 8;
+                    for (int a = 0; a < annotationCount; a++) {
+                        body.append(indent);
+                        annotation = annotation(info, annotation, body);
+                        newLine();
+                    }
+                }
+                offset += 6 + info.readInt(offset + 2);
+            }
+        }
+
+        /**
+         * Reads an annotation structure, writing it if {@code out} is not null,
+         * and returns the offset after it.
+         */
+        private int annotation(ClassFileScanner info, int offset, StringBuilder out) {
+            String type = info.utf8(info.readU2(offset));
+            int pairs = info.readU2(offset + 2);
+            offset += 4;
+            if (out != null) {
+                out.append('@').append(new Signature(type).type(this));
+            }
+            StringBuilder values = out != null ? new StringBuilder() : null;
+            for (int i = 0; i < pairs; i++) {
+                String name = info.utf8(info.readU2(offset));
+                if (values != null) {
+                    values.append(i > 0 ? ", " : "");
+                    if (pairs > 1 || !"value".equals(name)) {
+                        values.append(name).append(" = ");
+                    }
+                }
+                offset = elementValue(info, offset + 2, values);
+            }
+            if (out != null && pairs > 0) {
+                out.append('(').append(values).append(')');
+            }
+            return offset;
+        }
+
+        private int elementValue(ClassFileScanner info, int offset, StringBuilder out) {
+            char tag = (char) (info.readU2(offset) >> 8);
+            offset++;
+            switch (tag) {
+                case 'e':
+                    if (out != null) {
+                        out.append(new Signature(info.utf8(info.readU2(offset))).type(this))
+                                .append('.').append(info.utf8(info.readU2(offset + 2)));
+                    }
+                    return offset + 4;
+                case 'c':
+                    if (out != null) {
+                        out.append(new Signature(info.utf8(info.readU2(offset))).type(this)).append(".class");
+                    }
+                    return offset + 2;
+                case '@':
+                    return annotation(info, offset, out);
+                case '[':
+                    int count = info.readU2(offset);
+                    offset += 2;
+                    if (out != null && count != 1) {
+                        out.append('{');
+                    }
+                    for (int i = 0; i < count; i++) {
+                        if (out != null && i > 0) {
+                            out.append(", ");
+                        }
+                        offset = elementValue(info, offset, out);
+                    }
+                    if (out != null && count != 1) {
+                        out.append('}');
+                    }
+                    return offset;
+                default:
+                    if (out != null) {
+                        out.append(literal(info.constant(info.readU2(offset)), tag == 's' ? 'L' : tag));
+                    }
+                    return offset + 2;
+            }
+        }
+
+        // --- Text ---
+
+        private void modifiers(int flags, boolean field) {
+            if ((flags & ACC_PUBLIC) != 0) {
+                body.append("public ");
+            }
+            if ((flags & ACC_PROTECTED) != 0) {
+                body.append("protected ");
+            }
+            if ((flags & ACC_PRIVATE) != 0) {
+                body.append("private ");
+            }
+            if ((flags & ACC_ABSTRACT) != 0) {
+                body.append("abstract ");
+            }
+            if ((flags & ACC_STATIC) != 0) {
+                body.append("static ");
+            }
+            if ((flags & ACC_FINAL) != 0) {
+                body.append("final ");
+            }
+            if (field) {
+                if ((flags & ACC_TRANSIENT) != 0) {
+                    body.append("transient ");
+                }
+                if ((flags & ACC_VOLATILE) != 0) {
+                    body.append("volatile ");
+                }
+            } else {
+                if ((flags & ACC_SYNCHRONIZED) != 0) {
+                    body.append("synchronized ");
+                }
+                if ((flags & ACC_NATIVE) != 0) {
+                    body.append("native ");
+                }
+                if ((flags & ACC_STRICT) != 0) {
+                    body.append("strictfp ");
+                }
+            }
+        }
+
+        private void newLine() {
+            body.append('\n');
+            line++;
+        }
+
+        /**
+         * Returns how a class is written in this source: its simple name if
+         * that is free or already imported for it, otherwise the qualified name.
+         * Nested classes are written through their top-level class.
+         */
+        String typeName(String internalName) {
+            int slash = internalName.lastIndexOf('/');
+            int dollar = internalName.indexOf('$', slash + 1);
+            String topLevel = dollar > slash + 1 ? internalName.substring(0, dollar) : internalName;
+            String nested = dollar > slash + 1 ? internalName.substring(dollar).replace('$', '.') : "";
+            String qualified = topLevel.replace('/', '.');
+            String simple = topLevel.substring(slash + 1);
+            String existing = simpleNames.get(simple);
+            if (existing == null) {
+                simpleNames.put(simple, qualified);
+                return simple + nested;
+            }
+            return (existing.equals(qualified) ? simple : qualified) + nested;
+        }
+
+        private static int skipAttributes(ClassFileScanner info, int offset) {
+            int count = info.readU2(offset);
+            offset += 2;
+            for (int i = 0; i < count; i++) {
+                offset += 6 + info.readInt(offset + 2);
+            }
+            return offset;
+        }
+    }
+
+    /**
+     * Java literal for a constant of the given descriptor type ('L' for strings).
+     */
+    private static String literal(Object value, char type) {
+        switch (type) {
+            case 'Z':
+                return ((Integer) value) != 0 ? "true" : "false";
+            case 'C':
+                return quote(String.valueOf((char) ((Integer) value).intValue()), '\'');
+            case 'J':
+                return value + "L";
+            case 'F': {
+                float f = (Float) value;
+                if (Float.isNaN(f)) {
+                    return "0.0f / 0.0f";
+                }
+                return Float.isInfinite(f) ? (f > 0 ? "1.0f / 0.0f" : "-1.0f / 0.0f") : value + "f";
+            }
+            case 'D': {
+                double d = (Double) value;
+                if (Double.isNaN(d)) {
+                    return "0.0 / 0.0";
+                }
+                return Double.isInfinite(d) ? (d > 0 ? "1.0 / 0.0" : "-1.0 / 0.0") : value.toString();
+            }
+            case 'L':
+                return value instanceof String ? quote((String) value, '"') : value.toString();
+            default:
+                return value.toString();
+        }
+    }
+
+    private static String quote(String text, char quote) {
+        StringBuilder out = new StringBuilder(text.length() + 2).append(quote);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                case '\b':
+                    out.append("\\b");
+                    break;
+                case '\f':
+                    out.append("\\f");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                default:
+                    if (c == quote) {
+                        out.append('\\').append(c);
+                    } else if (c < 0x20 || c == 0x7F) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        return out.append(quote).toString();
+    }
+
+    /**
+     * Reader of descriptors and generic signatures (JVMS 4.7.9.1), producing Java source types.
+     */
+    private static final class Signature {
+
+        private final String text;
+        private int pos;
+
+        Signature(String text) {
+            this.text = text;
+        }
+
+        boolean atEnd() {
+            return pos >= text.length();
+        }
+
+        char peek() {
+            return atEnd() ? 0 : text.charAt(pos);
+        }
+
+        void skip() {
+            pos++;
+        }
+
+        /**
+         * Returns the current char; the text must go on here.
+         */
+        private char require() {
+            if (atEnd()) {
+                throw new IllegalArgumentException("Truncated signature: " + text);
+            }
+            return text.charAt(pos);
+        }
+
+        private int indexOf(char c) {
+            int index = text.indexOf(c, pos);
+            if (index < 0) {
+                throw new IllegalArgumentException("Bad signature: " + text);
+            }
+            return index;
+        }
+
+        /**
+         * Reads optional type parameters, returned as "<T extends Bound, U>" or "".
+         */
+        String typeParameters(Renderer renderer) {
+            if (peek() != '<') {
+                return "";
+            }
+            pos++;
+            StringBuilder out = new StringBuilder("<");
+            boolean first = true;
+            while (require() != '>') {
+                int colon = indexOf(':');
+                out.append(first ? "" : ", ").append(text, pos, colon);
+                first = false;
+                pos = colon + 1;
+                List<String> bounds = new ArrayList<>();
+                if (peek() != ':' && peek() != '>') {
+                    bounds.add(type(renderer));
+                }
+                while (peek() == ':') {
+                    pos++;
+                    bounds.add(type(renderer));
+                }
+                bounds.remove("Object");
+                for (int i = 0; i < bounds.size(); i++) {
+                    out.append(i == 0 ? " extends " : " & ").append(bounds.get(i));
+                }
+            }
+            pos++;
+            return out.append('>').toString();
+        }
+
+        /**
+         * Reads a parenthesized parameter list.
+         */
+        List<String> parameters(Renderer renderer) {
+            List<String> types = new ArrayList<>();
+            pos++; // (
+            while (require() != ')') {
+                types.add(type(renderer));
+            }
+            pos++;
+            return types;
+        }
+
+        String type(Renderer renderer) {
+            char c = require();
+            pos++;
+            switch (c) {
+                case 'B':
+                    return "byte";
+                case 'C':
+                    return "char";
+                case 'D':
+                    return "double";
+                case 'F':
+                    return "float";
+                case 'I':
+                    return "int";
+                case 'J':
+                    return "long";
+                case 'S':
+                    return "short";
+                case 'Z':
+                    return "boolean";
+                case 'V':
+                    return "void";
+                case '[':
+                    return type(renderer) + "[]";
+                case 'T': {
+                    int end = indexOf(';');
+                    String variable = text.substring(pos, end);
+                    pos = end + 1;
+                    return variable;
+                }
+                case 'L':
+                    return classType(renderer);
+                default:
+                    throw new IllegalArgumentException("Bad signature: " + text);
+            }
+        }
+
+        private String classType(Renderer renderer) {
+            int start = pos;
+            while (require() != '<' && peek() != '.' && peek() != ';') {
+                pos++;
+            }
+            StringBuilder out = new StringBuilder(renderer.typeName(text.substring(start, pos)));
+            typeArguments(renderer, out);
+            while (peek() == '.') {
+                // Inner class of a parameterized outer class
+                start = ++pos;
+                while (require() != '<' && peek() != '.' && peek() != ';') {
+                    pos++;
+                }
+                out.append('.').append(text, start, pos);
+                typeArguments(renderer, out);
+            }
+            pos++; // ;
+            return out.toString();
+        }
+
+        private void typeArguments(Renderer renderer, StringBuilder out) {
+            if (peek() != '<') {
+                return;
+            }
+            pos++;
+            out.append('<');
+            boolean first = true;
+            while (require() != '>') {
+                out.append(first ? "" : ", ");
+                first = false;
+                char c = peek();
+                if (c == '*') {
+                    pos++;
+                    out.append('?');
+                } else if (c == '+') {
+                    pos++;
+                    out.append("? extends ").append(type(renderer));
+                } else if (c == '-') {
+                    pos++;
+                    out.append("? super ").append(type(renderer));
+                } else {
+                    out.append(type(renderer));
+                }
+            }
+            pos++;
+            out.append('>');
+        }
+    }
+}
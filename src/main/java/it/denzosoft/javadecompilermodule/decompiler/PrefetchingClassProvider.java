@@ -0,0 +1,189 @@
+package it.denzosoft.javadecompilermodule.decompiler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-request class provider that loads the dependencies of a class in
+ * parallel before the engine starts, so the analysis reads warm memory
+ * instead of blocking on file or archive I/O one class at a time.
+ * <p>
+ * Classes the engine asks for that were not preloaded are read through the
+ * wrapped provider and kept as well. Negative answers are remembered too, as
+ * engines probe for the same missing (usually JDK) classes repeatedly.
+ */
+public final class PrefetchingClassProvider implements DecompilerEngine.ClassProvider {
+
+    private static final int MAX_HIERARCHY_DEPTH = 8;
+    private static final byte[] MISSING = new byte[0];
+
+    private static final AtomicInteger THREADS = new AtomicInteger();
+    private static final ExecutorService LOADER = Executors.newFixedThreadPool(
+            Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors())), r -> {
+                Thread t = new Thread(r, "JavaDecompiler class loader " + THREADS.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+
+    private final DecompilerEngine.ClassProvider delegate;
+    private final Map<String, byte[]> loaded = new ConcurrentHashMap<>();
+    private final AtomicInteger reads = new AtomicInteger();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    public PrefetchingClassProvider(DecompilerEngine.ClassProvider delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Loads everything the class refers to: the constant-pool classes and
+     * nested classes first, then the supertypes of the loaded supertypes,
+     * level by level. Returns when all loads finished or the wait ran out;
+     * loads still running complete in the background.
+     *
+     * @param classInfo the class about to be decompiled
+     * @param maxWaitMillis upper bound for the whole preload
+     */
+    public void preload(ClassFileScanner classInfo, long maxWaitMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        String self = classInfo.getThisClass();
+
+        Set<String> wave = ConcurrentHashMap.newKeySet();
+        wave.addAll(classInfo.getReferencedClasses());
+        for (ClassFileScanner.InnerClass inner : classInfo.getInnerClasses()) {
+            wave.add(inner.getName());
+        }
+        wave.remove(self);
+
+        List<String> supertypes = new ArrayList<>();
+        addSupertypes(classInfo, supertypes);
+        for (int depth = 0; !wave.isEmpty() && depth <= MAX_HIERARCHY_DEPTH; depth++) {
+            Set<String> next = ConcurrentHashMap.newKeySet();
+            List<CompletableFuture<Void>> loads = new ArrayList<>(wave.size());
+            for (final String name : wave) {
+                final boolean supertype = supertypes.contains(name);
+                loads.add(CompletableFuture.runAsync(() -> {
+                    byte[] bytes = fetch(name);
+                    if (supertype && bytes != MISSING) {
+                        // The engines walk the whole hierarchy, so queue the next level up
+                        try {
+                            List<String> parents = new ArrayList<>();
+                            addSupertypes(ClassFileScanner.scan(bytes), parents);
+                            next.addAll(parents);
+                        } catch (IllegalArgumentException e) {
+                            // Not a class file; the engine will report it if it matters
+                        }
+                    }
+                }, LOADER));
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            try {
+                CompletableFuture.allOf(loads.toArray(new CompletableFuture<?>[0])).get(remaining, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                return;
+            } catch (ExecutionException e) {
+                // fetch() does not throw; nothing to report
+            }
+            next.removeAll(loaded.keySet());
+            supertypes.clear();
+            supertypes.addAll(next);
+            wave = next;
+        }
+    }
+
+    private static void addSupertypes(ClassFileScanner classInfo, Collection<String> result) {
+        if (classInfo.getSuperClass() != null) {
+            result.add(classInfo.getSuperClass());
+        }
+        result.addAll(classInfo.getInterfaces());
+    }
+
+    /**
+     * Returns the bytes of a class, loading them once, or {@link #MISSING}.
+     */
+    private byte[] fetch(String name) {
+        byte[] bytes = loaded.get(name);
+        if (bytes != null) {
+            return bytes;
+        }
+        reads.incrementAndGet();
+        try {
+            bytes = delegate.canLoad(name) ? delegate.load(name) : MISSING;
+        } catch (Exception e) {
+            bytes = MISSING;
+        }
+        if (bytes == null) {
+            bytes = MISSING;
+        }
+        byte[] previous = loaded.putIfAbsent(name, bytes);
+        return previous != null ? previous : bytes;
+    }
+
+    @Override
+    public boolean canLoad(String internalName) {
+        byte[] bytes = loaded.get(internalName);
+        if (bytes != null) {
+            return bytes != MISSING;
+        }
+        return delegate.canLoad(internalName);
+    }
+
+    @Override
+    public byte[] load(String internalName) throws Exception {
+        byte[] bytes = loaded.get(internalName);
+        if (bytes == MISSING) {
+            hits.incrementAndGet();
+            throw new IOException("Cannot load: " + internalName);
+        }
+        if (bytes != null) {
+            hits.incrementAndGet();
+            return bytes;
+        }
+        misses.incrementAndGet();
+        reads.incrementAndGet();
+        bytes = delegate.load(internalName);
+        loaded.putIfAbsent(internalName, bytes);
+        return bytes;
+    }
+
+    /**
+     * Returns how many classes were read through the wrapped provider.
+     */
+    public int getReadCount() {
+        return reads.get();
+    }
+
+    /**
+     * Returns how many engine loads were answered from memory.
+     */
+    public int getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns how many engine loads had to go to the wrapped provider.
+     */
+    public int getMissCount() {
+        return misses.get();
+    }
+
+    @Override
+    public String getScopeId() {
+        return delegate.getScopeId();
+    }
+}
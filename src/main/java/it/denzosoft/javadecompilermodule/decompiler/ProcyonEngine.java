@@ -11,13 +11,41 @@ import com.strobel.decompiler.DecompilerSettings;
 import com.strobel.decompiler.PlainTextOutput;
 import com.strobel.decompiler.languages.java.JavaFormattingOptions;
 import java.io.StringWriter;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Procyon decompiler engine.
  * Good quality output with excellent generics support.
+ * <p>
+ * Procyon resolves every referenced type into its {@link MetadataSystem}
+ * before decompiling, so the type system is kept between calls: one session
+ * per class scope (see {@link ClassProvider#getScopeId()}), used by one
+ * thread at a time and dropped after sitting idle. A session that already
+ * resolved the class being decompiled from different bytes is dropped too,
+ * so a stale definition is never reused. The metadata system only grows, so
+ * a session is also retired after a number of decompilations or resolved
+ * types. Bootstrap classes read from the runtime are shared by all sessions.
  */
 public class ProcyonEngine implements DecompilerEngine {
 
+    private static final long SESSION_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final int MAX_IDLE_SESSIONS = 8;
+    private static final int MAX_SESSION_USES = 64;
+    private static final int MAX_SESSION_TYPES = 16384;
+    private static final int MAX_BOOTSTRAP_CLASSES = 8192;
+    private static final byte[] MISSING = new byte[0];
+
+    // Most recently released first
+    private static final Deque<Session> IDLE_SESSIONS = new ArrayDeque<>();
+    private static final Map<String, byte[]> BOOTSTRAP_CLASSES = new ConcurrentHashMap<>();
+
     @Override
     public String getId() {
         return "procyon";
@@ -34,49 +62,36 @@ public class ProcyonEngine implements DecompilerEngine {
     }
 
     @Override
-    public String decompile(String className, byte[] bytecode, ClassProvider classProvider, boolean preserveLineNumbers) throws Exception {
+    public String getVersion() {
+        return "0.6.0"; // keep in sync with pom.xml
+    }
+
+    @Override
+    public DecompiledSource decompile(String className, byte[] bytecode, ClassProvider classProvider) throws Exception {
         DecompilerSettings settings = DecompilerSettings.javaDefaults();
         settings.setShowSyntheticMembers(false);
         settings.setForceExplicitImports(true);
 
-        // Note: Procyon doesn't support line number alignment like JD-Core
+        // Note: Procyon doesn't report a line mapping like JD-Core;
         // setShowDebugLineNumbers adds comments which break compilation
-        // So we just use debug variable names when preserveLineNumbers is enabled
-        if (preserveLineNumbers) {
-            settings.setRetainPointlessSwitches(false);
-        }
+        settings.setRetainPointlessSwitches(false);
 
         JavaFormattingOptions formatting = JavaFormattingOptions.createDefault();
         settings.setJavaFormattingOptions(formatting);
 
-        // Custom type loader
-        ITypeLoader typeLoader = new ITypeLoader() {
-            private final ITypeLoader defaultLoader = new InputTypeLoader();
-
-            @Override
-            public boolean tryLoadType(String internalName, Buffer buffer) {
-                if (internalName.equals(className)) {
-                    buffer.reset(bytecode.length);
-                    buffer.putByteArray(bytecode, 0, bytecode.length);
-                    buffer.position(0);
-                    return true;
-                }
-                if (classProvider.canLoad(internalName)) {
-                    try {
-                        byte[] data = classProvider.load(internalName);
-                        buffer.reset(data.length);
-                        buffer.putByteArray(data, 0, data.length);
-                        buffer.position(0);
-                        return true;
-                    } catch (Exception e) {
-                        return false;
-                    }
-                }
-                return defaultLoader.tryLoadType(internalName, buffer);
-            }
-        };
+        String scopeId = classProvider.getScopeId();
+        Session session = scopeId != null ? acquire(scopeId, className, bytecode) : new Session(null);
+        session.begin(className, bytecode, classProvider);
+        String source = decompile(className, session.metadataSystem, settings);
+        session.end();
+        if (scopeId != null && !DecompilationJob.isAbandoned() && !session.isExhausted()) {
+            // Only sessions that completed normally go back; a failed or abandoned run may have left it inconsistent
+            release(session);
+        }
+        return new DecompiledSource(source);
+    }
 
-        MetadataSystem metadataSystem = new MetadataSystem(typeLoader);
+    private static String decompile(String className, MetadataSystem metadataSystem, DecompilerSettings settings) throws Exception {
         TypeReference typeRef = metadataSystem.lookupType(className);
 
         if (typeRef == null) {
@@ -100,4 +115,151 @@ public class ProcyonEngine implements DecompilerEngine {
 
         return writer.toString();
     }
+
+    private static Session acquire(String scopeId, String className, byte[] bytecode) {
+        long now = System.currentTimeMillis();
+        long fingerprint = fingerprint(bytecode);
+        synchronized (IDLE_SESSIONS) {
+            Session found = null;
+            for (Iterator<Session> it = IDLE_SESSIONS.iterator(); it.hasNext();) {
+                Session session = it.next();
+                if (now - session.lastUsed > SESSION_IDLE_MILLIS) {
+                    it.remove();
+                } else if (found == null && scopeId.equals(session.scopeId)) {
+                    it.remove();
+                    // A session that resolved this class from older bytes is dropped
+                    if (!session.holdsOther(className, fingerprint)) {
+                        found = session;
+                    }
+                }
+            }
+            DecompilerMetrics.getDefault().recordCache("procyonSessions", found != null);
+            if (found != null) {
+                return found;
+            }
+        }
+        return new Session(scopeId);
+    }
+
+    private static void release(Session session) {
+        session.lastUsed = System.currentTimeMillis();
+        synchronized (IDLE_SESSIONS) {
+            IDLE_SESSIONS.addFirst(session);
+            while (IDLE_SESSIONS.size() > MAX_IDLE_SESSIONS) {
+                IDLE_SESSIONS.removeLast();
+            }
+        }
+    }
+
+    /**
+     * Identifies class file contents well enough to tell a recompiled class apart.
+     */
+    private static long fingerprint(byte[] data) {
+        return ((long) data.length << 32) | (Arrays.hashCode(data) & 0xFFFFFFFFL);
+    }
+
+    private static void fill(Buffer buffer, byte[] data) {
+        buffer.reset(data.length);
+        buffer.putByteArray(data, 0, data.length);
+        buffer.position(0);
+    }
+
+    /**
+     * A Procyon type system bound to one class scope. The loader serves the
+     * class being decompiled and the provider of the current call, so the
+     * resolved types stay valid for every class of the same scope.
+     */
+    private static final class Session implements ITypeLoader {
+
+        final String scopeId;
+        final MetadataSystem metadataSystem;
+        private final ITypeLoader bootstrapLoader = new InputTypeLoader();
+        long lastUsed;
+        private int uses;
+        private int types;
+
+        // Fingerprint of each class read from the target or the provider; the
+        // metadata system keeps what it resolved from them
+        private final Map<String, Long> loaded = new HashMap<>();
+        private String className;
+        private byte[] bytecode;
+        private ClassProvider classProvider;
+
+        Session(String scopeId) {
+            this.scopeId = scopeId;
+            this.metadataSystem = new MetadataSystem(this);
+        }
+
+        void begin(String className, byte[] bytecode, ClassProvider classProvider) {
+            uses++;
+            bind(className, bytecode, classProvider);
+        }
+
+        void end() {
+            // Do not keep the provider (and its open archives) alive while idle
+            bind(null, null, null);
+        }
+
+        /**
+         * Returns true once the session has served or resolved enough to be retired.
+         */
+        boolean isExhausted() {
+            return uses >= MAX_SESSION_USES || types >= MAX_SESSION_TYPES;
+        }
+
+        private void bind(String className, byte[] bytecode, ClassProvider classProvider) {
+            this.className = className;
+            this.bytecode = bytecode;
+            this.classProvider = classProvider;
+        }
+
+        /**
+         * Returns true if the class was read from other bytes than these.
+         */
+        boolean holdsOther(String className, long fingerprint) {
+            Long previous = loaded.get(className);
+            return previous != null && previous != fingerprint;
+        }
+
+        @Override
+        public boolean tryLoadType(String internalName, Buffer buffer) {
+            // Each type is read once, then kept by the metadata system
+            types++;
+            if (internalName.equals(className)) {
+                loaded.put(internalName, fingerprint(bytecode));
+                fill(buffer, bytecode);
+                return true;
+            }
+            if (classProvider != null && classProvider.canLoad(internalName)) {
+                try {
+                    byte[] data = classProvider.load(internalName);
+                    loaded.put(internalName, fingerprint(data));
+                    fill(buffer, data);
+                    return true;
+                } catch (Exception e) {
+                    return false;
+                }
+            }
+            return loadBootstrap(internalName, buffer);
+        }
+
+        private boolean loadBootstrap(String internalName, Buffer buffer) {
+            byte[] data = BOOTSTRAP_CLASSES.get(internalName);
+            if (data == null) {
+                if (bootstrapLoader.tryLoadType(internalName, buffer)) {
+                    data = Arrays.copyOf(buffer.array(), buffer.size());
+                } else {
+                    data = MISSING;
+                }
+                if (BOOTSTRAP_CLASSES.size() < MAX_BOOTSTRAP_CLASSES) {
+                    BOOTSTRAP_CLASSES.put(internalName, data);
+                }
+            }
+            if (data == MISSING) {
+                return false;
+            }
+            fill(buffer, data);
+            return true;
+        }
+    }
 }
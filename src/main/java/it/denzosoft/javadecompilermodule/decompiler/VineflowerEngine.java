@@ -17,52 +17,6 @@ import org.jetbrains.java.decompiler.main.extern.IResultSaver;
  */
 public class VineflowerEngine implements DecompilerEngine {
 
-    /**
-     * Adds empty lines to align decompiled code with original line numbers.
-     * The mapping array format: [decompiledLine1, originalLine1, decompiledLine2, originalLine2, ...]
-     */
-    private static String addLineNumbers(String content, int[] mapping) {
-        if (mapping == null || mapping.length < 2) {
-            return content;
-        }
-
-        String[] lines = content.split("\n", -1);
-        StringBuilder result = new StringBuilder();
-
-        // Build a map of decompiled line -> original line
-        java.util.Map<Integer, Integer> lineMap = new java.util.HashMap<>();
-        for (int i = 0; i < mapping.length - 1; i += 2) {
-            int decompiledLine = mapping[i];
-            int originalLine = mapping[i + 1];
-            if (decompiledLine > 0 && originalLine > 0) {
-                lineMap.put(decompiledLine, originalLine);
-            }
-        }
-
-        int currentOutputLine = 1;
-        for (int i = 0; i < lines.length; i++) {
-            int decompiledLineNum = i + 1;
-            Integer originalLine = lineMap.get(decompiledLineNum);
-
-            // If we have original line info and need to add padding
-            if (originalLine != null && originalLine > currentOutputLine) {
-                // Add empty lines to reach the original line number
-                while (currentOutputLine < originalLine) {
-                    result.append("\n");
-                    currentOutputLine++;
-                }
-            }
-
-            result.append(lines[i]);
-            if (i < lines.length - 1) {
-                result.append("\n");
-            }
-            currentOutputLine++;
-        }
-
-        return result.toString();
-    }
-
     @Override
     public String getId() {
         return "vineflower";
@@ -79,8 +33,14 @@ public class VineflowerEngine implements DecompilerEngine {
     }
 
     @Override
-    public String decompile(String className, byte[] bytecode, ClassProvider classProvider, boolean preserveLineNumbers) throws Exception {
+    public String getVersion() {
+        return "1.10.1"; // keep in sync with pom.xml
+    }
+
+    @Override
+    public DecompiledSource decompile(String className, byte[] bytecode, ClassProvider classProvider) throws Exception {
         final StringBuilder result = new StringBuilder();
+        final LineAligner lineAligner = new LineAligner(); // decompiled line -> original line
 
         // Create a unique temp file path for this class
         final String classFilePath = className.replace('/', File.separatorChar) + ".class";
@@ -135,12 +95,8 @@ public class VineflowerEngine implements DecompilerEngine {
             @Override
             public void saveClassFile(String path, String qualifiedName, String entryName, String content, int[] mapping) {
                 if (content != null && !content.isEmpty()) {
-                    if (preserveLineNumbers && mapping != null && mapping.length > 0) {
-                        // Add line number aligned content
-                        result.append(addLineNumbers(content, mapping));
-                    } else {
-                        result.append(content);
-                    }
+                    lineAligner.addPairs(mapping);
+                    result.append(content);
                 }
             }
 
@@ -198,9 +154,7 @@ public class VineflowerEngine implements DecompilerEngine {
         options.put("udv", "1"); // use debug variable names
         options.put("rsy", "1"); // remove synthetic members
         options.put("rbr", "1"); // remove bridge methods
-        if (preserveLineNumbers) {
-            options.put("bsm", "1"); // bytecode source mapping (provides mapping array)
-        }
+        options.put("bsm", "1"); // bytecode source mapping (provides mapping array)
 
         Fernflower fernflower = new Fernflower(bytecodeProvider, resultSaver, options, logger);
 
@@ -222,6 +176,6 @@ public class VineflowerEngine implements DecompilerEngine {
         // Add decompiler info at the end
         result.append("\n\n// Decompiled with Fernflower (Vineflower)\n");
 
-        return result.toString();
+        return new DecompiledSource(result.toString(), lineAligner.toPairs());
     }
 }
@@ -18,6 +18,8 @@ import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JRadioButton;
 import javax.swing.JSeparator;
+import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
 
 /**
  * Options panel for selecting the decompiler engine.
@@ -26,8 +28,20 @@ public class DecompilerOptionsPanel extends JPanel {
 
     private final ButtonGroup buttonGroup;
     private final JCheckBox preserveLineNumbersCheckbox;
+    private final JCheckBox diskCacheCheckbox;
+    private final JSpinner diskCacheSizeSpinner;
+    private final JCheckBox prefetchCheckbox;
+    private final JSpinner timeoutSpinner;
+    private final JCheckBox raceCheckbox;
+    private final JCheckBox fallbackCheckbox;
     private String selectedEngineId;
     private boolean preserveLineNumbers;
+    private boolean diskCacheEnabled;
+    private int diskCacheSizeMb;
+    private boolean prefetchEnabled;
+    private int timeoutSeconds;
+    private boolean raceEnabled;
+    private boolean fallbackEnabled;
 
     public DecompilerOptionsPanel() {
         setLayout(new BorderLayout());
@@ -47,8 +61,14 @@ public class DecompilerOptionsPanel extends JPanel {
         buttonGroup = new ButtonGroup();
         List<DecompilerEngine> engines = DecompilerRegistry.getAvailableEngines();
 
+        JPanel autoPanel = createEnginePanel(DecompilerRegistry.AUTO_ENGINE_ID, "Auto",
+                "Picks an engine per class from its bytecode features and the engines' observed speed and failures");
+        autoPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        mainPanel.add(autoPanel);
+        mainPanel.add(Box.createVerticalStrut(10));
+
         for (DecompilerEngine engine : engines) {
-            JPanel enginePanel = createEnginePanel(engine);
+            JPanel enginePanel = createEnginePanel(engine.getId(), engine.getDisplayName(), engine.getDescription());
             enginePanel.setAlignmentX(Component.LEFT_ALIGNMENT);
             mainPanel.add(enginePanel);
             mainPanel.add(Box.createVerticalStrut(10));
@@ -78,6 +98,83 @@ public class DecompilerOptionsPanel extends JPanel {
         lineNumbersDesc.setFont(lineNumbersDesc.getFont().deriveFont(Font.ITALIC));
         lineNumbersDesc.setAlignmentX(Component.LEFT_ALIGNMENT);
         mainPanel.add(lineNumbersDesc);
+        mainPanel.add(Box.createVerticalStrut(10));
+
+        // Disk cache checkbox and size
+        diskCacheSizeSpinner = new JSpinner(new SpinnerNumberModel(64, 1, 4096, 16));
+        diskCacheSizeSpinner.addChangeListener(e -> diskCacheSizeMb = (Integer) diskCacheSizeSpinner.getValue());
+        diskCacheCheckbox = new JCheckBox("Cache decompiled sources on disk");
+        diskCacheCheckbox.setAlignmentX(Component.LEFT_ALIGNMENT);
+        diskCacheCheckbox.addActionListener(e -> {
+            diskCacheEnabled = diskCacheCheckbox.isSelected();
+            diskCacheSizeSpinner.setEnabled(diskCacheEnabled);
+        });
+        mainPanel.add(diskCacheCheckbox);
+
+        JPanel cacheSizePanel = new JPanel();
+        cacheSizePanel.setLayout(new BoxLayout(cacheSizePanel, BoxLayout.X_AXIS));
+        cacheSizePanel.add(new JLabel("    Maximum cache size (MB): "));
+        cacheSizePanel.add(diskCacheSizeSpinner);
+        cacheSizePanel.add(Box.createHorizontalGlue());
+        cacheSizePanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        cacheSizePanel.setMaximumSize(cacheSizePanel.getPreferredSize());
+        mainPanel.add(cacheSizePanel);
+        mainPanel.add(Box.createVerticalStrut(10));
+
+        // Background prefetch checkbox
+        prefetchCheckbox = new JCheckBox("Decompile related classes in the background");
+        prefetchCheckbox.setAlignmentX(Component.LEFT_ALIGNMENT);
+        prefetchCheckbox.addActionListener(e -> prefetchEnabled = prefetchCheckbox.isSelected());
+        mainPanel.add(prefetchCheckbox);
+
+        JLabel prefetchDesc = new JLabel("    Prepares supertypes, referenced types and package siblings of classes opened from JARs");
+        prefetchDesc.setFont(prefetchDesc.getFont().deriveFont(Font.ITALIC));
+        prefetchDesc.setAlignmentX(Component.LEFT_ALIGNMENT);
+        mainPanel.add(prefetchDesc);
+        mainPanel.add(Box.createVerticalStrut(10));
+
+        // Time limit per class
+        timeoutSpinner = new JSpinner(new SpinnerNumberModel(30, 0, 3600, 5));
+        timeoutSpinner.addChangeListener(e -> timeoutSeconds = (Integer) timeoutSpinner.getValue());
+        JPanel timeoutPanel = new JPanel();
+        timeoutPanel.setLayout(new BoxLayout(timeoutPanel, BoxLayout.X_AXIS));
+        timeoutPanel.add(new JLabel("Time limit per class (seconds, 0 = none): "));
+        timeoutPanel.add(timeoutSpinner);
+        timeoutPanel.add(Box.createHorizontalGlue());
+        timeoutPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        timeoutPanel.setMaximumSize(timeoutPanel.getPreferredSize());
+        mainPanel.add(timeoutPanel);
+        mainPanel.add(Box.createVerticalStrut(10));
+
+        // Engine race checkbox
+        raceCheckbox = new JCheckBox("Race several engines and show the first successful result");
+        raceCheckbox.setAlignmentX(Component.LEFT_ALIGNMENT);
+        raceCheckbox.addActionListener(e -> raceEnabled = raceCheckbox.isSelected());
+        mainPanel.add(raceCheckbox);
+
+        StringBuilder raceEngines = new StringBuilder();
+        for (DecompilerEngine engine : DecompilerRegistry.getRaceEngines()) {
+            if (raceEngines.length() > 0) {
+                raceEngines.append(", ");
+            }
+            raceEngines.append(engine.getDisplayName());
+        }
+        JLabel raceDesc = new JLabel("    Runs " + raceEngines + " in parallel; later opens use the engine that won for that class");
+        raceDesc.setFont(raceDesc.getFont().deriveFont(Font.ITALIC));
+        raceDesc.setAlignmentX(Component.LEFT_ALIGNMENT);
+        mainPanel.add(raceDesc);
+        mainPanel.add(Box.createVerticalStrut(10));
+
+        // Fallback chain checkbox
+        fallbackCheckbox = new JCheckBox("Retry with other engines when the selected one fails");
+        fallbackCheckbox.setAlignmentX(Component.LEFT_ALIGNMENT);
+        fallbackCheckbox.addActionListener(e -> fallbackEnabled = fallbackCheckbox.isSelected());
+        mainPanel.add(fallbackCheckbox);
+
+        JLabel fallbackDesc = new JLabel("    Engines failing repeatedly on a JAR or class-file version are skipped there for 10 minutes");
+        fallbackDesc.setFont(fallbackDesc.getFont().deriveFont(Font.ITALIC));
+        fallbackDesc.setAlignmentX(Component.LEFT_ALIGNMENT);
+        mainPanel.add(fallbackDesc);
 
         add(mainPanel, BorderLayout.NORTH);
 
@@ -85,15 +182,15 @@ public class DecompilerOptionsPanel extends JPanel {
         load();
     }
 
-    private JPanel createEnginePanel(DecompilerEngine engine) {
+    private JPanel createEnginePanel(String id, String displayName, String description) {
         JPanel panel = new JPanel();
         panel.setLayout(new BoxLayout(panel, BoxLayout.Y_AXIS));
 
-        JRadioButton radioButton = new JRadioButton(engine.getDisplayName());
-        radioButton.setActionCommand(engine.getId());
+        JRadioButton radioButton = new JRadioButton(displayName);
+        radioButton.setActionCommand(id);
         radioButton.addActionListener(e -> selectedEngineId = e.getActionCommand());
 
-        JLabel descLabel = new JLabel("    " + engine.getDescription());
+        JLabel descLabel = new JLabel("    " + description);
         descLabel.setFont(descLabel.getFont().deriveFont(Font.ITALIC));
 
         buttonGroup.add(radioButton);
@@ -116,6 +213,12 @@ public class DecompilerOptionsPanel extends JPanel {
     public void load() {
         selectedEngineId = DecompilerRegistry.getSelectedEngineId();
         preserveLineNumbers = DecompilerRegistry.isPreserveLineNumbers();
+        diskCacheEnabled = DecompilerRegistry.isDiskCacheEnabled();
+        diskCacheSizeMb = DecompilerRegistry.getDiskCacheSizeMb();
+        prefetchEnabled = DecompilerRegistry.isPrefetchEnabled();
+        timeoutSeconds = DecompilerRegistry.getTimeoutSeconds();
+        raceEnabled = DecompilerRegistry.isRaceEnabled();
+        fallbackEnabled = DecompilerRegistry.isFallbackEnabled();
 
         // Select the correct radio button
         Enumeration<AbstractButton> elements = buttonGroup.getElements();
@@ -129,6 +232,13 @@ public class DecompilerOptionsPanel extends JPanel {
 
         // Set checkbox state
         preserveLineNumbersCheckbox.setSelected(preserveLineNumbers);
+        diskCacheCheckbox.setSelected(diskCacheEnabled);
+        diskCacheSizeSpinner.setValue(diskCacheSizeMb);
+        diskCacheSizeSpinner.setEnabled(diskCacheEnabled);
+        prefetchCheckbox.setSelected(prefetchEnabled);
+        timeoutSpinner.setValue(timeoutSeconds);
+        raceCheckbox.setSelected(raceEnabled);
+        fallbackCheckbox.setSelected(fallbackEnabled);
     }
 
     /**
@@ -139,6 +249,12 @@ public class DecompilerOptionsPanel extends JPanel {
             DecompilerRegistry.setSelectedEngine(selectedEngineId);
         }
         DecompilerRegistry.setPreserveLineNumbers(preserveLineNumbers);
+        DecompilerRegistry.setDiskCacheEnabled(diskCacheEnabled);
+        DecompilerRegistry.setDiskCacheSizeMb(diskCacheSizeMb);
+        DecompilerRegistry.setPrefetchEnabled(prefetchEnabled);
+        DecompilerRegistry.setTimeoutSeconds(timeoutSeconds);
+        DecompilerRegistry.setRaceEnabled(raceEnabled);
+        DecompilerRegistry.setFallbackEnabled(fallbackEnabled);
     }
 
     /**
@@ -146,6 +262,12 @@ public class DecompilerOptionsPanel extends JPanel {
      */
     public boolean isChanged() {
         return !DecompilerRegistry.getSelectedEngineId().equals(selectedEngineId)
-                || DecompilerRegistry.isPreserveLineNumbers() != preserveLineNumbers;
+                || DecompilerRegistry.isPreserveLineNumbers() != preserveLineNumbers
+                || DecompilerRegistry.isDiskCacheEnabled() != diskCacheEnabled
+                || DecompilerRegistry.getDiskCacheSizeMb() != diskCacheSizeMb
+                || DecompilerRegistry.isPrefetchEnabled() != prefetchEnabled
+                || DecompilerRegistry.getTimeoutSeconds() != timeoutSeconds
+                || DecompilerRegistry.isRaceEnabled() != raceEnabled
+                || DecompilerRegistry.isFallbackEnabled() != fallbackEnabled;
     }
 }